@@ -0,0 +1,397 @@
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Binary file format for a map and its connections, written and read through buffered NIO channels.
+ * Unlike the text format it keeps every city's decorations, and it stores connections as city indices
+ * rather than locations, so overlapping cities load back exactly as they were saved.
+ *
+ * <p>All numbers are big-endian ints. A fixed header holds the magic number, the format version,
+ * flags and the number of cities n. The body follows, gzip compressed if the compressed flag is
+ * set:</p>
+ * <ul>
+ * <li>the style table: a count, then for every style its number of layers and, from the outermost
+ * layer in, each layer's type (0 square, 1 cross, 2 circle), ARGB colour and size;</li>
+ * <li>n X locations, n Y locations and n style indices;</li>
+ * <li>n name lengths followed by the UTF-8 bytes of every name in turn;</li>
+ * <li>n connection targets, the index of the city each city connects to or -1.</li>
+ * </ul>
+ * Every layer of a decorated city shares its name and location, as EditCityHandler creates them.
+ */
+public class BinaryMapFormat {
+
+    /**
+     * "TSPB" in ASCII.
+     */
+    public static final int MAGIC = 0x54535042;
+
+    /**
+     * Version written by save. Files with a newer version are refused.
+     */
+    public static final int VERSION = 1;
+
+    private static final int COMPRESSED = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String[] TYPES = { "Square", "Cross", "Circle" };
+
+
+    private BinaryMapFormat() {
+    }
+
+
+    /**
+     * Check whether a file starts with the magic number of this format.
+     * @param file File to check
+     * @return true if the file looks like a binary map
+     */
+    public static boolean isBinary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1)
+                    return false;
+            }
+            return header.getInt(0) == MAGIC;
+        }
+    }
+
+
+    /**
+     * Save the current cities and connections.
+     * @param file File to write, replaced if it exists
+     * @param cityDB The CityDatabase singleton object
+     * @param compress true to gzip the body
+     */
+    public static void save(File file, CityDatabase cityDB, boolean compress) throws IOException {
+        CitySnapshot snapshot;
+        Tour paths;
+        synchronized (cityDB) {
+            snapshot = cityDB.getSnapshot();
+            paths = cityDB.copyPaths();
+        }
+        save(file, snapshot, paths, compress);
+    }
+
+    /**
+     * Save cities and connections taken together, which can be done on any thread.
+     * @param file File to write, replaced if it exists
+     * @param snapshot Cities to write
+     * @param paths Connections to write, by index into the snapshot's city list
+     * @param compress true to gzip the body
+     */
+    public static void save(File file, CitySnapshot snapshot, Tour paths, boolean compress)
+            throws IOException {
+        List<City> cities = snapshot.cities;
+        int n = cities.size();
+
+        //   Gather the distinct decoration chains first, so each is written once and every city only
+        // refers to one by index.
+
+        HashMap<Style, Integer> known = new HashMap<>();
+        List<Style> styles = new ArrayList<>();
+        int[] styleOf = new int[n];
+        int[] nameLengths = new int[n];
+        byte[][] names = new byte[n][];
+        int[] targets = new int[n];
+        for (int i = 0; i < n; i++) {
+            City city = cities.get(i);
+            Style style = Style.of(city);
+            Integer index = known.get(style);
+            if (index == null) {
+                index = styles.size();
+                known.put(style, index);
+                styles.add(style);
+            }
+            styleOf[i] = index;
+            names[i] = city.name.getBytes(StandardCharsets.UTF_8);
+            nameLengths[i] = names[i].length;
+            int next = paths.next(i);
+            targets[i] = next < n ? next : -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(compress ? COMPRESSED : 0).putInt(n);
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header);
+
+            WritableByteChannel body = channel;
+            if (compress) {
+                // fastest deflate level; the default level took six times as long for a similar size
+                body = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) {
+                    {
+                        def.setLevel(Deflater.BEST_SPEED);
+                    }
+                });
+            }
+            Output out = new Output(body);
+            out.putInt(styles.size());
+            for (Style style : styles) {
+                out.putInt(style.layers.length / 3);
+                out.putInts(style.layers, style.layers.length);
+            }
+            out.putInts(snapshot.table.xs, n);
+            out.putInts(snapshot.table.ys, n);
+            out.putInts(styleOf, n);
+            out.putInts(nameLengths, n);
+            for (byte[] name : names)
+                out.putBytes(name);
+            out.putInts(targets, n);
+            out.flush();
+            if (compress)
+                body.close();
+        }
+    }
+
+
+    /**
+     * Add the cities and connections of a file to the database, after any cities already there.
+     * @param file File to read
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     * @return Number of cities added
+     */
+    public static int load(File file, CityDatabase cityDB) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) == -1)
+                    throw new EOFException("Truncated header");
+            }
+            header.flip();
+            if (header.getInt() != MAGIC)
+                throw new IOException("Not a binary map file");
+            int version = header.getInt();
+            if (version > VERSION)
+                throw new IOException("Unsupported binary map version " + version);
+            boolean compressed = (header.getInt() & COMPRESSED) != 0;
+            int n = header.getInt();
+            if (n < 0)
+                throw new IOException("Negative city count");
+
+            ReadableByteChannel body = compressed
+                    ? Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE))
+                    : channel;
+            Input in = new Input(body);
+            int styleCount = in.getInt();
+            if (styleCount < 0)
+                throw new IOException("Negative style count");
+            Style[] styles = new Style[styleCount];
+            for (int s = 0; s < styleCount; s++) {
+                int layerCount = in.getInt();
+                if (layerCount < 1)
+                    throw new IOException("Style without layers");
+                int[] layers = new int[layerCount * 3];
+                in.getInts(layers, layers.length);
+                for (int l = 0; l < layerCount; l++) {
+                    if (layers[3 * l] < 0 || layers[3 * l] >= TYPES.length)
+                        throw new IOException("Unknown city type " + layers[3 * l]);
+                }
+                styles[s] = new Style(layers);
+            }
+            int[] xs = new int[n];
+            int[] ys = new int[n];
+            int[] styleOf = new int[n];
+            int[] nameLengths = new int[n];
+            in.getInts(xs, n);
+            in.getInts(ys, n);
+            in.getInts(styleOf, n);
+            in.getInts(nameLengths, n);
+
+            City[] cities = new City[n];
+            for (int i = 0; i < n; i++) {
+                if (styleOf[i] < 0 || styleOf[i] >= styleCount || nameLengths[i] < 0)
+                    throw new IOException("Malformed city " + i);
+                byte[] name = new byte[nameLengths[i]];
+                in.getBytes(name);
+                cities[i] = styles[styleOf[i]].create(new String(name, StandardCharsets.UTF_8), xs[i], ys[i]);
+            }
+            int[] targets = new int[n];
+            in.getInts(targets, n);
+
+            int first = cityDB.cities.size();
+            cityDB.addCities(cities);
+            Tour connections = new Tour(first + n);
+            for (int i = 0; i < n; i++) {
+                if (targets[i] >= 0 && targets[i] < n)
+                    connections.connect(first + i, first + targets[i]);
+            }
+            cityDB.addConnections(connections);
+            return n;
+        }
+    }
+
+
+    //   The decoration chain of a city as (type, ARGB colour, size) triples from the outermost layer
+    // in. Decorators keep their own bounds from when they were made, so bounds.width is the size each
+    // layer was created with.
+
+    private static class Style {
+        final int[] layers;
+        private Color[] colors;
+        private String[] sizes;
+
+        Style(int[] layers) {
+            this.layers = layers;
+        }
+
+        static Style of(City city) {
+            int[] layers = new int[3];
+            int count = 0;
+            City layer = city;
+            while (layer != null) {
+                if (count == layers.length)
+                    layers = Arrays.copyOf(layers, count * 2);
+                layers[count++] = layer instanceof CrossCity ? 1 : layer instanceof CircleCity ? 2 : 0;
+                layers[count++] = layer.color == null ? 0 : layer.color.getRGB();
+                layers[count++] = layer.bounds.width;
+                layer = layer instanceof CityDecorator ? ((CityDecorator) layer).getCity() : null;
+            }
+            return new Style(Arrays.copyOf(layers, count));
+        }
+
+        City create(String name, int x, int y) {
+            int layerCount = layers.length / 3;
+            if (colors == null) {
+                colors = new Color[layerCount];
+                sizes = new String[layerCount];
+                for (int l = 0; l < layerCount; l++) {
+                    colors[l] = new Color(layers[3 * l + 1], true);
+                    sizes[l] = Integer.toString(layers[3 * l + 2]);
+                }
+            }
+            FactoryCity maker = FactoryCity.getFC();
+            City city = null;
+            for (int l = layerCount - 1; l >= 0; l--) {
+                City layer = maker.createCity(name, x, y, sizes[l], colors[l], TYPES[layers[3 * l]]);
+                if (city != null)
+                    ((CityDecorator) layer).setCity(city);
+                city = layer;
+            }
+            return city;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Style && Arrays.equals(layers, ((Style) other).layers);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(layers);
+        }
+    }
+
+
+    private static class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4)
+                flush();
+            buffer.putInt(value);
+        }
+
+        void putInts(int[] values, int count) throws IOException {
+            int done = 0;
+            while (done < count) {
+                if (buffer.remaining() < 4)
+                    flush();
+                int batch = Math.min(buffer.remaining() / 4, count - done);
+                buffer.asIntBuffer().put(values, done, batch);
+                buffer.position(buffer.position() + 4 * batch);
+                done += batch;
+            }
+        }
+
+        void putBytes(byte[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                if (!buffer.hasRemaining())
+                    flush();
+                int batch = Math.min(buffer.remaining(), values.length - done);
+                buffer.put(values, done, batch);
+                done += batch;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+
+    private static class Input {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Input(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        int getInt() throws IOException {
+            require(4);
+            return buffer.getInt();
+        }
+
+        void getInts(int[] values, int count) throws IOException {
+            int done = 0;
+            while (done < count) {
+                require(4);
+                int batch = Math.min(buffer.remaining() / 4, count - done);
+                buffer.asIntBuffer().get(values, done, batch);
+                buffer.position(buffer.position() + 4 * batch);
+                done += batch;
+            }
+        }
+
+        void getBytes(byte[] values) throws IOException {
+            int done = 0;
+            while (done < values.length) {
+                require(1);
+                int batch = Math.min(buffer.remaining(), values.length - done);
+                buffer.get(values, done, batch);
+                done += batch;
+            }
+        }
+
+        private void require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes)
+                return;
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) == -1)
+                    throw new EOFException("Truncated binary map file");
+            }
+            buffer.flip();
+        }
+    }
+}
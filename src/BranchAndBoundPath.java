@@ -0,0 +1,299 @@
+import java.util.List;
+
+
+/**
+ * Exact TSP algorithm that searches partial tours depth first and prunes every branch whose 1-tree
+ * lower bound cannot beat the best tour found so far. The first upper bound comes from GreedyTSP.
+ */
+public class BranchAndBoundPath extends Strategy {
+
+    double[][] distances;
+    double[][] penalised;
+    double[] penalties;
+    int[] bestTour;
+    double bestDistance;
+    long nodeCount;
+    long pruneCount;
+    double rootBound;
+
+
+    /**
+     * Invokes the branch and bound tsp algorithm.
+     * @param cities List of cities that will be visited and mapped.
+     * @return Guaranteed best paths between cities as a tour
+     */
+    public Tour runBranchAndBound(List<City> cities) throws InterruptedException {
+        if (cities == null || cities.size() < 2)
+            return null;
+        distances = buildDistances(cities);
+        nodeCount = 0;
+        pruneCount = 0;
+        DistanceTable table = DistanceTable.of(cities);
+        bestTour = new GreedyTSP().nearestNeighbourTour(table.xs, table.ys);
+        bestDistance = tourDistance(bestTour);
+        computePenalties();
+        publish(bestTour, bestDistance, rootBound);
+        solve();
+        // only a search that ran to the end proves the best tour optimal
+        setLowerBound(bestDistance);
+        return Tour.fromOrder(bestTour);
+    }
+
+
+    /**
+     * Search every tour starting at city 0, leaving the optimum in bestTour. Throws instead of
+     * returning if the search was cut short, so a normal return means bestTour is optimal.
+     */
+    void solve() throws InterruptedException {
+        int n = distances.length;
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        tour[0] = 0;
+        visited[0] = true;
+        search(tour, 1, visited, 0);
+    }
+
+    /**
+     * @return Number of search nodes expanded by the last run
+     */
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return Number of search nodes cut off by the lower bound in the last run
+     */
+    public long getPruneCount() {
+        return pruneCount;
+    }
+
+    /**
+     * @return Length of the best tour found by the last run
+     */
+    public double getBestDistance() {
+        return bestDistance;
+    }
+
+
+    private void search(int[] tour, int depth, boolean[] visited, double length) throws InterruptedException {
+        if (Thread.interrupted() || isCancelled()) {
+            throw new InterruptedException();
+        }
+        nodeCount++;
+        int n = tour.length;
+        int current = tour[depth - 1];
+        if (depth == n) {
+            double total = length + distances[current][tour[0]];
+            if (total < bestDistance) {
+                bestDistance = total;
+                bestTour = tour.clone();
+                publish(bestTour, bestDistance, rootBound);
+            }
+            return;
+        }
+        if (length + lowerBound(current, tour[0], visited) >= bestDistance) {
+            pruneCount++;
+            return;
+        }
+
+        //   Try the nearest unvisited cities first so good tours, and with them tight upper bounds,
+        // are found early.
+
+        for (int next : nearestOrder(current, visited)) {
+            double extended = length + distances[current][next];
+            if (extended >= bestDistance) {
+                pruneCount++;
+                continue;
+            }
+            visited[next] = true;
+            tour[depth] = next;
+            search(tour, depth + 1, visited, extended);
+            visited[next] = false;
+        }
+    }
+
+
+    /**
+     * Lower bound on the cost of finishing a partial tour: the remaining path from current through every
+     * unvisited city back to start is a 1-tree over the unvisited cities, so it costs at least their
+     * minimum spanning tree plus the cheapest edge into it from each end. The bound is taken over the
+     * penalised distances and the penalties are subtracted again, which keeps it valid and tightens it.
+     */
+    double lowerBound(int current, int start, boolean[] visited) {
+        int n = visited.length;
+        int[] left = new int[n];
+        int count = 0;
+        double penaltySum = penalties[current] + penalties[start];
+        for (int i = 0; i < n; i++) {
+            if (!visited[i]) {
+                left[count++] = i;
+                penaltySum += 2 * penalties[i];
+            }
+        }
+        if (count == 0)
+            return distances[current][start];
+
+        double minFromCurrent = Double.MAX_VALUE;
+        double minToStart = Double.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            minFromCurrent = Math.min(minFromCurrent, penalised[current][left[i]]);
+            minToStart = Math.min(minToStart, penalised[left[i]][start]);
+        }
+        return minFromCurrent + minToStart + spanningTreeLength(penalised, left, count, null) - penaltySum;
+    }
+
+
+    //   Held-Karp subgradient optimisation on the 1-tree of the whole instance. Each city gets a penalty
+    // that pushes its 1-tree degree towards two; the same penalties are then reused by every node bound.
+
+    private void computePenalties() {
+        int n = distances.length;
+        penalties = new double[n];
+        penalised = distances;
+        rootBound = Double.NaN;
+        if (n < 3)
+            return;
+        double[] best = penalties.clone();
+        double bestBound = -Double.MAX_VALUE;
+        double step = 2.0;
+        int[] degrees = new int[n];
+        int[] others = new int[n - 1];
+        for (int i = 1; i < n; i++)
+            others[i - 1] = i;
+        double[][] current = new double[n][n];
+        for (int iteration = 0; iteration < 50 * n && step > 1e-6; iteration++) {
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++)
+                    current[i][j] = distances[i][j] + penalties[i] + penalties[j];
+                degrees[i] = 0;
+            }
+            double bound = spanningTreeLength(current, others, n - 1, degrees) + attachRoot(current, degrees);
+            for (int i = 0; i < n; i++)
+                bound -= 2 * penalties[i];
+            if (bound > bestBound) {
+                bestBound = bound;
+                best = penalties.clone();
+            } else {
+                step *= 0.95;
+            }
+            double norm = 0;
+            for (int i = 0; i < n; i++)
+                norm += (degrees[i] - 2) * (degrees[i] - 2);
+            if (norm == 0)
+                break;
+            double move = step * (bestDistance - bound) / norm;
+            for (int i = 0; i < n; i++)
+                penalties[i] += move * (degrees[i] - 2);
+        }
+        penalties = best;
+        rootBound = bestBound;
+        penalised = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                penalised[i][j] = distances[i][j] + penalties[i] + penalties[j];
+        }
+    }
+
+
+    private double attachRoot(double[][] matrix, int[] degrees) {
+        int first = -1;
+        int second = -1;
+        for (int i = 1; i < matrix.length; i++) {
+            if (first == -1 || matrix[0][i] < matrix[0][first]) {
+                second = first;
+                first = i;
+            } else if (second == -1 || matrix[0][i] < matrix[0][second]) {
+                second = i;
+            }
+        }
+        degrees[0] = 2;
+        degrees[first]++;
+        degrees[second]++;
+        return matrix[0][first] + matrix[0][second];
+    }
+
+
+    private double spanningTreeLength(double[][] matrix, int[] nodes, int count, int[] degrees) {
+        double[] key = new double[count];
+        int[] parent = new int[count];
+        boolean[] inTree = new boolean[count];
+        for (int i = 1; i < count; i++)
+            key[i] = Double.MAX_VALUE;
+        parent[0] = -1;
+        double total = 0;
+        for (int added = 0; added < count; added++) {
+            int closest = -1;
+            for (int i = 0; i < count; i++) {
+                if (!inTree[i] && (closest == -1 || key[i] < key[closest]))
+                    closest = i;
+            }
+            inTree[closest] = true;
+            total += key[closest];
+            if (degrees != null && parent[closest] != -1) {
+                degrees[nodes[closest]]++;
+                degrees[nodes[parent[closest]]]++;
+            }
+            double[] row = matrix[nodes[closest]];
+            for (int i = 0; i < count; i++) {
+                if (!inTree[i] && row[nodes[i]] < key[i]) {
+                    key[i] = row[nodes[i]];
+                    parent[i] = closest;
+                }
+            }
+        }
+        return total;
+    }
+
+
+    int[] nearestOrder(int current, boolean[] visited) {
+        int n = visited.length;
+        int[] order = new int[n];
+        int count = 0;
+        double[] row = distances[current];
+        for (int i = 0; i < n; i++) {
+            if (visited[i])
+                continue;
+            int j = count++;
+            while (j > 0 && row[order[j - 1]] > row[i]) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        int[] result = new int[count];
+        System.arraycopy(order, 0, result, 0, count);
+        return result;
+    }
+
+
+    double tourDistance(int[] tour) {
+        double total = 0;
+        for (int i = 0; i < tour.length; i++)
+            total += distances[tour[i]][tour[(i + 1) % tour.length]];
+        return total;
+    }
+
+
+    double[][] buildDistances(List<City> cities) {
+        int n = cities.size();
+        DistanceTable table = DistanceTable.of(cities);
+        double[][] result = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                result[i][j] = table.distance(i, j);
+        }
+        return result;
+    }
+
+
+    /**
+     * Run the branch and bound algorithm to find the optimal path.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runBranchAndBound(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
+    }
+}
@@ -1,6 +1,7 @@
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 
 /**
  * Circle City is a decoration for a city.
@@ -63,7 +64,9 @@ public class CircleCity extends CityDecorator {
         boolean center;
         center = super.contains(x, y);
         int radius = size / 2;
-        boolean circle = radius > (x * this.x + y * this.y);
+        int dx = x - (this.x + radius);
+        int dy = y - (this.y + radius);
+        boolean circle = dx * dx + dy * dy < radius * radius;
         if (circle || center) {
             return true;
         } else {
@@ -71,6 +74,14 @@ public class CircleCity extends CityDecorator {
         }
     }
 
+    /**
+     * footprint covers the circle as well as the decorated city.
+     */
+    @Override
+    public Rectangle footprint() {
+        return super.footprint().union(new Rectangle(x, y, size, size));
+    }
+
     /**
      * gets x location of the base city.
      * 
@@ -13,6 +13,7 @@ public abstract class City {
     public final String name;
     public int size;
     public Color color;
+    int index = -1;
     
     /**
      * Constructs City instance.
@@ -56,6 +57,14 @@ public abstract class City {
         return bounds.contains(x, y);
     }
     
+    /**
+     * Smallest rectangle holding every location contains can return true for.
+     * @return Bounding box of the city and everything drawn around it
+     */
+    public Rectangle footprint() {
+        return new Rectangle(bounds);
+    }
+    
     /**
      * Move the city to the given location
      * @param x The X location of the city
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+
+/**
+ * Change to the CityDatabase delivered to its observers. Changes posted between two deliveries are
+ * merged into one, so an observer sees which cities were added or moved since the last delivery,
+ * whether every city was removed, and whether the paths changed, without having to compare states.
+ * Cities are only ever appended or all removed at once, so the added cities are one range of indices.
+ */
+public class CityChange {
+
+    private boolean cleared;
+    private int addedFrom = -1;
+    private int addedTo = -1;
+    private int[] moved = new int[0];
+    private int movedCount = 0;
+    private boolean pathsChanged;
+    private long version;
+
+
+    private CityChange(long version) {
+        this.version = version;
+    }
+
+
+    /**
+     * @param from Index of the first added city
+     * @param to Index after the last added city
+     * @param version Version of the cities after the change
+     * @return Change for cities appended to the list
+     */
+    static CityChange added(int from, int to, long version) {
+        CityChange change = new CityChange(version);
+        change.addedFrom = from;
+        change.addedTo = to;
+        return change;
+    }
+
+    /**
+     * @param index Index of the city that moved or was replaced
+     * @param version Version of the cities after the change
+     * @return Change for one city whose location or appearance changed
+     */
+    static CityChange moved(int index, long version) {
+        CityChange change = new CityChange(version);
+        change.moved = new int[] { index };
+        change.movedCount = 1;
+        return change;
+    }
+
+    /**
+     * @param version Version of the cities after the change
+     * @return Change for every city and path being removed
+     */
+    static CityChange cleared(long version) {
+        CityChange change = new CityChange(version);
+        change.cleared = true;
+        change.pathsChanged = true;
+        return change;
+    }
+
+    /**
+     * @param version Version of the cities, which new paths do not change
+     * @return Change for new paths
+     */
+    static CityChange paths(long version) {
+        CityChange change = new CityChange(version);
+        change.pathsChanged = true;
+        return change;
+    }
+
+
+    /**
+     * Fold a later change into this one.
+     * @param next Change that happened after this one
+     * @return This change, now standing for both
+     */
+    CityChange merge(CityChange next) {
+        if (next.cleared) {
+            cleared = true;
+            addedFrom = -1;
+            addedTo = -1;
+            movedCount = 0;
+        }
+        if (next.addedFrom != -1) {
+            addedFrom = addedFrom == -1 ? next.addedFrom : Math.min(addedFrom, next.addedFrom);
+            addedTo = Math.max(addedTo, next.addedTo);
+        }
+        for (int i = 0; i < next.movedCount; i++) {
+            if (movedCount == moved.length)
+                moved = Arrays.copyOf(moved, Math.max(4, movedCount * 2));
+            moved[movedCount++] = next.moved[i];
+        }
+        pathsChanged |= next.pathsChanged;
+        version = Math.max(version, next.version);
+        return this;
+    }
+
+
+    /**
+     * @return true if every city was removed; added and moved then refer to the new cities only
+     */
+    public boolean isCleared() {
+        return cleared;
+    }
+
+    /**
+     * @return Index of the first added city, or -1 if none were added
+     */
+    public int getAddedFrom() {
+        return addedFrom;
+    }
+
+    /**
+     * @return Index after the last added city, or -1 if none were added
+     */
+    public int getAddedTo() {
+        return addedTo;
+    }
+
+    /**
+     * @return Indices of the cities that moved or were replaced, each listed once, in increasing order
+     */
+    public int[] getMoved() {
+        int[] sorted = Arrays.copyOf(moved, movedCount);
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1])
+                sorted[unique++] = sorted[i];
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    /**
+     * @return true if the paths changed
+     */
+    public boolean isPathsChanged() {
+        return pathsChanged;
+    }
+
+    /**
+     * @return Version of the cities after the change
+     */
+    public long getVersion() {
+        return version;
+    }
+}
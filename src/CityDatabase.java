@@ -1,13 +1,16 @@
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.awt.Color;
 
 /**
  * A collection of cities that allows data manipulation and drawing.
+ * The live collections belong to the event dispatch thread. Every change to the cities bumps a
+ * version number, and strategies running on other threads read an immutable CitySnapshot taken at one
+ * version instead, which is built once per version and shared. Paths are edited in place, under the
+ * lock and only on the event dispatch thread, so painting reads them directly while other threads take
+ * a copy with copyPaths(). Tours computed by strategies replace the paths whole and are taken over
+ * rather than copied.
  * @author Nate Robinson
  */
 public class CityDatabase extends Observable {
@@ -15,12 +18,19 @@ public class CityDatabase extends Observable {
 
     private CityDatabase() {
         cities = new ArrayList<>();
-        paths = new HashMap<>();
+        paths = new Tour(0);
+        coordinates = new CoordinateStore();
+        hits = new HitIndex();
     }
 
     final List<City> cities;
-    final Map<City, City> paths;
+    volatile Tour paths;
+    final CoordinateStore coordinates;
+    private final HitIndex hits;
     City selected = null;
+    private long version = 0;
+    private volatile CitySnapshot snapshot = null;
+    private TourRepair repair = null;
 
     /**
      * Instantiates CityDatabase.
@@ -42,8 +52,13 @@ public class CityDatabase extends Observable {
      */
 
     public void createCity(int x, int y, String name, Color selected, String size) {
-        cities.add(new BaseCity(x, y, name, selected, size));
-        sendNotifications(this);
+        CityChange change;
+        synchronized (this) {
+            append(new BaseCity(x, y, name, selected, size));
+            changed();
+            change = CityChange.added(cities.size() - 1, cities.size(), version);
+        }
+        postNotification(change);
     }
     
     /**
@@ -52,13 +67,25 @@ public class CityDatabase extends Observable {
      * @param created - new city to put
      */
     public void swapInstance(City change, City created) {
-        int i = 0;
-        for (City city : cities) {
-            if (city == change) {
-                cities.set(i, created);
-            }
-            i++;
+        CityChange swapped;
+        synchronized (this) {
+            int i = change.index;
+            if (i < 0 || i >= cities.size() || cities.get(i) != change) return;
+            cities.set(i, created);
+            change.index = -1;
+            created.index = i;
+            coordinates.set(i, created.getX(), created.getY());
+            hits.update(i, created);
+            changed();
+            swapped = CityChange.moved(i, version);
         }
+        postNotification(swapped);
+    }
+
+    private void append(City city) {
+        city.index = coordinates.add(city.getX(), city.getY());
+        cities.add(city);
+        hits.add(city.index, city);
     }
     
     /**
@@ -66,52 +93,125 @@ public class CityDatabase extends Observable {
      * @param newCities Non-empty list of cities to add
      */
     public void addCities(City[] newCities) {
-        if (newCities != null) return;
-        cities.addAll(Arrays.asList(newCities));
-        sendNotifications(this);
+        if (newCities == null) return;
+        CityChange change;
+        synchronized (this) {
+            int first = cities.size();
+            coordinates.ensureCapacity(first + newCities.length);
+            for (City city : newCities) {
+                append(city);
+            }
+            changed();
+            change = CityChange.added(first, cities.size(), version);
+        }
+        postNotification(change);
     }
 
     /**
      * Remove all cities and paths.
      */
     public void clear() {
-        cities.clear();
-        paths.clear();
-        sendNotifications(this);
+        CityChange change;
+        synchronized (this) {
+            for (City city : cities) {
+                city.index = -1;
+            }
+            cities.clear();
+            paths = new Tour(0);
+            coordinates.clear();
+            hits.clear();
+            changed();
+            change = CityChange.cleared(version);
+        }
+        postNotification(change);
     }
     
     /**
      * Reset paths and send change notifications.
      */
     public void clearConnections() {
-        paths.clear();
-        sendNotifications(this);
+        CityChange change;
+        synchronized (this) {
+            paths = new Tour(0);
+            change = CityChange.paths(version);
+        }
+        postNotification(change);
     }
 
     /**
-     * Set the paths to draw and send change notifications.
+     * Add to the paths to draw and send change notifications. Connections leaving the same cities are
+     * replaced.
+     * @param connections Paths between cities, by index into the city list
+     */
+    public void addConnections(Tour connections) {
+        CityChange change;
+        synchronized (this) {
+            repair = null;
+            paths.putAll(connections);
+            change = CityChange.paths(version);
+        }
+        postNotification(change);
+    }
+
+    /**
+     * Replace the paths to draw and send change notifications, but only if the cities have not changed
+     * since the snapshot the paths were computed from and no tour is being repaired. The tour is taken
+     * over rather than copied, so the caller must not change it afterwards.
+     * @param connections Paths between cities, by index into the snapshot's city list
+     * @param version Version of the snapshot the paths were computed from
+     * @return true if the paths were applied, false if they were computed for an older map or would
+     *         have ended a repair
+     */
+    public boolean addConnections(Tour connections, long version) {
+        synchronized (this) {
+            // a solve still finishing after the drag began must not replace the tour being repaired
+            if (version != this.version || isRepairing())
+                return false;
+            paths = connections;
+        }
+        postNotification(CityChange.paths(version));
+        return true;
+    }
+
+    /**
+     * Take a copy of the paths that later changes do not affect, for use off the event dispatch thread.
+     * @return Copy of the current paths
+     */
+    public synchronized Tour copyPaths() {
+        Tour copy = new Tour(paths.capacity());
+        copy.putAll(paths);
+        return copy;
+    }
+
+    /**
+     * Add to the paths to draw and send change notifications.
      * @param connections Paths between cities as map entries
      */
     public void addConnections(Map<City, City> connections) {
-        this.paths.putAll(connections);
-        sendNotifications(this);
+        CityChange change;
+        synchronized (this) {
+            repair = null;
+            for (Map.Entry<City, City> connection : connections.entrySet()) {
+                int from = connection.getKey().index;
+                int to = connection.getValue().index;
+                if (from >= 0 && to >= 0)
+                    paths.connect(from, to);
+            }
+            change = CityChange.paths(version);
+        }
+        postNotification(change);
     }
     
     /**
-     * Checks if a city intersects with the given location.
+     * Checks if a city intersects with the given location. Only the cities whose footprint overlaps
+     * the location are tested, and the first of them in list order wins.
      * @param x The X location of the city
      * @param y The Y location of the city
      * @return Intersecting city or null if none
      */
-    public City findCityAt(int x, int y) {
-        Iterator<City> iterator = cities.iterator();
-        while (iterator.hasNext()) {
-            City c = (City)iterator.next();
-            if (c.contains(x, y)) {
-                return c;
-            }
-        }
-        return null;
+    public synchronized City findCityAt(int x, int y) {
+        int index = hits.find(cities, x, y);
+        return index < 0 ? null : cities.get(index);
     }
     
     /**
@@ -122,7 +222,117 @@ public class CityDatabase extends Observable {
      */
     public void moveCity(City city, int x, int y) {
         if (city == null) return;
-        city.move(x, y);
-        sendNotifications(this);
+        CityChange change;
+        synchronized (this) {
+            if (city.index < 0 || city.index >= cities.size() || cities.get(city.index) != city) return;
+            // a move to where the city already is would only throw away the results being computed
+            if (city.getX() == x && city.getY() == y) return;
+            city.move(x, y);
+            coordinates.set(city.index, city.getX(), city.getY());
+            hits.update(city.index, city);
+            changed();
+            change = CityChange.moved(city.index, version);
+            if (repairTour(city))
+                change.merge(CityChange.paths(version));
+        }
+        postNotification(change);
+    }
+
+    /**
+     * Start repairing the tour locally on every moveCity() instead of leaving it to a full solve,
+     * until endRepair(). Only a single closed tour over every city can be repaired.
+     * @return true if the repair started, false if the paths are not such a tour
+     */
+    public synchronized boolean beginRepair() {
+        repair = TourRepair.begin(this);
+        return repair != null;
+    }
+
+    /**
+     * Stop repairing the tour on every move.
+     * @return true if the repair started by beginRepair() lasted until now, so the paths are a
+     *         repaired tour; false if it never started or was abandoned because the paths or cities
+     *         were changed some other way
+     */
+    public synchronized boolean endRepair() {
+        boolean repaired = isRepairing();
+        repair = null;
+        return repaired;
+    }
+
+    /**
+     * @return true if moveCity() currently repairs the tour
+     */
+    public synchronized boolean isRepairing() {
+        if (repair != null && (repair.paths != paths || repair.size() != cities.size()))
+            repair = null;
+        return repair != null;
+    }
+
+
+    //   Runs the repair for a city that just moved. The repair edits the paths in place, and any
+    // change to the paths or cities other than moves ends it.
+
+    private boolean repairTour(City city) {
+        if (!isRepairing())
+            return false;
+        try {
+            repair.move(city.index, city.getX(), city.getY());
+            return true;
+        } catch (InterruptedException e) {
+            repair = null;
+            Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * @return Version of the cities, bumped on every change to them
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get an immutable snapshot of the current cities. The snapshot is built on the first call after a
+     * change and shared by every later caller until the next change, so taking one is usually a
+     * single volatile read.
+     * @return Snapshot of the current cities
+     */
+    public CitySnapshot getSnapshot() {
+        CitySnapshot current = snapshot;
+        if (current != null)
+            return current;
+        synchronized (this) {
+            if (snapshot == null) {
+                DistanceTable table = new DistanceTable(coordinates.copyXs(), coordinates.copyYs());
+                snapshot = new CitySnapshot(version, cities.toArray(new City[0]), table);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Get the distances between the current cities, building them if a city was added or moved since
+     * the last call.
+     * @return Distance table indexed like the city list
+     */
+    public DistanceTable getDistanceTable() {
+        return getSnapshot().table;
+    }
+
+    /**
+     * Merge changes posted between two deliveries into one CityChange.
+     */
+    @Override
+    protected Object coalesce(Object pending, Object next) {
+        if (pending instanceof CityChange && next instanceof CityChange)
+            return ((CityChange) pending).merge((CityChange) next);
+        return next;
+    }
+
+    private synchronized void changed() {
+        version++;
+        snapshot = null;
     }
 }
@@ -1,6 +1,7 @@
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 
 /**
  * City Decorator is the abstract class that adds decorations to an existing city.
@@ -61,6 +62,17 @@ public abstract class CityDecorator extends City{
         return false;
     }
     
+    /**
+     * footprint of the added city.
+     */
+    @Override
+    public Rectangle footprint() {
+        if(city != null) {
+            return city.footprint();
+        }
+        return new Rectangle(bounds.x, bounds.y, 0, 0);
+    }
+    
     /**
      * gets x location of the added city.
      * 
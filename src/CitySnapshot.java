@@ -0,0 +1,83 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+
+/**
+ * Immutable view of the cities at one version of the CityDatabase. Strategies read a snapshot instead
+ * of the live collections, so the GUI can keep editing the map while they run, and hand the version
+ * back with their result so a result computed for an older map is never applied to a newer one.
+ */
+public class CitySnapshot {
+
+    final long version;
+    final List<City> cities;
+    final DistanceTable table;
+
+
+    /**
+     * Instantiates a snapshot.
+     * @param version Version of the CityDatabase the snapshot was taken at
+     * @param cities The cities at that version, which the snapshot takes ownership of
+     * @param table Distances between the cities, indexed like the array
+     */
+    CitySnapshot(long version, City[] cities, DistanceTable table) {
+        this.version = version;
+        this.cities = new CityList(cities);
+        this.table = table;
+    }
+
+
+    /**
+     * Find the snapshot a list of cities belongs to.
+     * @param cities List of cities
+     * @return The snapshot whose list it is, or null if it is some other list
+     */
+    static CitySnapshot of(List<City> cities) {
+        return cities instanceof CityList ? ((CityList) cities).snapshot() : null;
+    }
+
+    /**
+     * @return Version of the CityDatabase the snapshot was taken at
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Unmodifiable list of the cities at that version
+     */
+    public List<City> getCities() {
+        return cities;
+    }
+
+    /**
+     * @return Distances between the cities, indexed like the list
+     */
+    public DistanceTable getTable() {
+        return table;
+    }
+
+
+    private class CityList extends AbstractList<City> implements RandomAccess {
+        private final City[] cities;
+
+        CityList(City[] cities) {
+            this.cities = cities;
+        }
+
+        CitySnapshot snapshot() {
+            return CitySnapshot.this;
+        }
+
+        @Override
+        public City get(int index) {
+            return cities[index];
+        }
+
+        @Override
+        public int size() {
+            return cities.length;
+        }
+    }
+}
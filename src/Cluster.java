@@ -1,164 +1,129 @@
-import java.awt.*;
-import java.util.*;
 import java.util.List;
 
 /**
- * Class that generates three different clusters based on the cities.
+ * Class that groups the cities into k clusters with k-means and connects each cluster in a loop.
  * @author Dustin Howarth
  */
 public class Cluster extends Strategy {
 
     /**
-     * Invokes the k-means clustering algorithm.
-     * @param cities List of cities to map
-     * @return Paths between cities as a map
+     * Number of clusters used by the default constructor.
      */
-    public Map<City, City> runClustering(List<City> cities) throws InterruptedException {
-        if (cities == null || cities.size() < 3 ) return null;
-        ArrayList<City> citiesCenter0 = new ArrayList<>();
-        ArrayList<City> citiesCenter1 = new ArrayList<>();
-        ArrayList<City> citiesCenter2 = new ArrayList<>();
-        Map<City, City> paths = new HashMap<>();
-        ArrayList<Point> centers = new ArrayList<>();
-        centers.add(generateCenter(cities));
-        centers.add(generateCenter(cities));
-        centers.add(generateCenter(cities));
-
-        //   Performs 10 iterations of the clustering algorithm in order to optimize the clusters.
-
-        for (int i = 0; i < 10; i++) {
-            citiesCenter0.clear();
-            citiesCenter1.clear();
-            citiesCenter2.clear();
-            for (City thisCity : cities) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
-                }
-                int nearestCenter = -1;
-                int centerCounter = 0;
-                double shortestDistance = Double.MAX_VALUE;
-                for (Point center : centers) {
-                    double thisDistance = calculateDistance(thisCity, center);
-                    if (thisDistance < shortestDistance) {
-                        nearestCenter = centerCounter;
-                        shortestDistance = thisDistance;
-                    }
-                    centerCounter++;
-                }
-                if (nearestCenter == 0)
-                    citiesCenter0.add(thisCity);
-                else if(nearestCenter == 1)
-                    citiesCenter1.add(thisCity);
-                else
-                    citiesCenter2.add(thisCity);
-            }
-            centers = recalculateCenters(cities,
-                                         citiesCenter0,
-                                         citiesCenter1,
-                                         citiesCenter2);
-        }
-        paths = getAllClusterPaths(citiesCenter0, citiesCenter1, citiesCenter2);
-        return paths;
+    public static final int DEFAULT_CLUSTERS = 3;
+
+    /**
+     * Number of cities from which the assignment and centre updates are sharded across threads.
+     */
+    public static final int PARALLEL_THRESHOLD = 50000;
+
+    /**
+     * Number of cities from which the centres are updated from random batches instead of every city.
+     */
+    public static final int MINI_BATCH_THRESHOLD = 500000;
+
+    private final int clusterCount;
+    private final boolean miniBatch;
+    private int iterations;
+
+
+    /**
+     * Instantiates the clustering with the default number of clusters.
+     */
+    public Cluster() {
+        this(DEFAULT_CLUSTERS);
     }
 
+    /**
+     * Instantiates the clustering.
+     * @param clusterCount Number of clusters to find
+     */
+    public Cluster(int clusterCount) {
+        this(clusterCount, false);
+    }
 
-    private double calculateDistance(City city, Point center) {
-        if (city == null) {
-            return Double.MAX_VALUE;
-        }
-        return Math.sqrt(Math.pow(city.getX() - center.getX(), 2) +
-                Math.pow(city.getY() - center.getY(), 2));
+    /**
+     * Instantiates the clustering.
+     * @param clusterCount Number of clusters to find
+     * @param miniBatch true to update the centres from small random batches of cities instead of
+     *                  every city, trading some accuracy for speed. Maps of MINI_BATCH_THRESHOLD
+     *                  cities or more always do.
+     */
+    public Cluster(int clusterCount, boolean miniBatch) {
+        this.clusterCount = clusterCount;
+        this.miniBatch = miniBatch;
     }
 
 
-    private Point calculateNewCenter(List<City> cities, ArrayList<City> cityCenter) {
-        if(cityCenter.size() == 0)
-            return generateCenter(cities);
-        int averageX = 0;
-        int averageY = 0;
-        for(City city: cityCenter) {
-            averageX += city.getX();
-            averageY += city.getY();
-        }
-        averageX /= cityCenter.size();
-        averageY /= cityCenter.size();
-        return  new Point(averageX, averageY);
+    /**
+     * Invokes the k-means clustering algorithm.
+     * @param cities List of cities to map
+     * @return Paths between cities as a tour
+     */
+    public Tour runClustering(List<City> cities) throws InterruptedException {
+        if (cities == null || cities.size() < clusterCount ) return null;
+        DistanceTable table = DistanceTable.of(cities);
+        KMeans kMeans = createEngine(cities.size());
+        int[] assignment = kMeans.cluster(table.xs, table.ys);
+        iterations = kMeans.getIterations();
+        return getAllClusterPaths(assignment, clusterCount);
     }
 
+    private KMeans createEngine(int cityCount) {
+        if (miniBatch || cityCount >= MINI_BATCH_THRESHOLD)
+            return new MiniBatchKMeans(clusterCount);
+        if (cityCount >= PARALLEL_THRESHOLD)
+            return new ParallelKMeans(clusterCount, this);
+        return new KMeans(clusterCount);
+    }
 
-    private Point generateCenter(List<City> cities){
-        int maxX = Integer.MIN_VALUE;;
-        int minX = Integer.MAX_VALUE;
-        int maxY = Integer.MIN_VALUE;;
-        int minY = Integer.MAX_VALUE;;
-        for(City city: cities){
-            if(city.getX() > maxX)
-                maxX = city.getX();
-            if(city.getY() > maxY)
-                maxY = city.getY();
-            if(city.getX() < minX)
-                minX = city.getX();
-            if(city.getY() < minY)
-                minY = city.getX();
-        }
-        Random random = new Random();
-        int xCoordinate0 = random.nextInt(maxX) + minX + 1;
-        int yCoordinate0 = random.nextInt(maxX) + minX + 1;
-        Point point = new Point(xCoordinate0, yCoordinate0);
-        return point;
+    /**
+     * @return Number of k-means iterations the last run took to converge
+     */
+    public int getIterations() {
+        return iterations;
     }
 
 
-    private HashMap<City, City> getAllClusterPaths(ArrayList<City> citiesCenter0,
-                                                  ArrayList<City> citiesCenter1,
-                                                  ArrayList<City> citiesCenter2) {
-        HashMap<City, City> map = new HashMap<>();
-        if(citiesCenter0.size() != 0) {
-            City firstCity = citiesCenter0.get(0);
-            for (int i = 0; i < citiesCenter0.size() - 1; i++) {
-                map.put(citiesCenter0.get(i), citiesCenter0.get(i + 1));
-            }
-            map.put(citiesCenter0.get(citiesCenter0.size() - 1), firstCity);
+    /**
+     * Connects the cities of every cluster in a loop, in city order.
+     * @param assignment Cluster number of every city
+     * @param clusterCount Number of clusters
+     * @return Paths between cities as a tour
+     */
+    static Tour getAllClusterPaths(int[] assignment, int clusterCount) {
+        Tour map = new Tour(assignment.length);
+        int[] first = new int[clusterCount];
+        int[] last = new int[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            first[c] = -1;
+            last[c] = -1;
         }
-
-        if(citiesCenter1.size() != 0) {
-            City firstCity = citiesCenter1.get(0);
-            for (int i = 0; i < citiesCenter1.size() - 1; i++) {
-                map.put(citiesCenter1.get(i), citiesCenter1.get(i + 1));
+        for (int i = 0; i < assignment.length; i++) {
+            int c = assignment[i];
+            if (c < 0) continue;
+            if (first[c] == -1) {
+                first[c] = i;
+            } else {
+                map.connect(last[c], i);
             }
-            map.put(citiesCenter1.get(citiesCenter1.size() - 1), firstCity);
+            last[c] = i;
         }
-
-        if(citiesCenter2.size() != 0) {
-            City firstCity = citiesCenter2.get(0);
-            for (int i = 0; i < citiesCenter2.size() - 1; i++) {
-                map.put(citiesCenter2.get(i), citiesCenter2.get(i + 1));
-            }
-            map.put(citiesCenter2.get(citiesCenter2.size() - 1), firstCity);
+        for (int c = 0; c < clusterCount; c++) {
+            if (first[c] != -1)
+                map.connect(last[c], first[c]);
         }
         return map;
     }
 
-    private ArrayList<Point> recalculateCenters(List<City> cities,
-                                                ArrayList<City> citiesCenter0,
-                                                ArrayList<City> citiesCenter1,
-                                                ArrayList<City> citiesCenter2) {
-        ArrayList<Point> centers = new ArrayList<>();
-        centers.add(calculateNewCenter(cities, citiesCenter0));
-        centers.add(calculateNewCenter(cities, citiesCenter1));
-        centers.add(calculateNewCenter(cities, citiesCenter2));
-        return centers;
-    }
-
 
     /**
-     * Run the clustering algorithm to find the three clusters.
+     * Run the clustering algorithm to find the clusters.
      * @param cityDB The CityDatabase singleton object that will be updated.
      */
     @Override
     public void createPath(CityDatabase cityDB) throws InterruptedException {
-        Map<City, City> path = runClustering(cityDB.cities);
-        if(path != null)
-            cityDB.addConnections(path);
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runClustering(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
     }
 }
@@ -0,0 +1,96 @@
+import java.util.Arrays;
+
+
+/**
+ * Dense, index-addressed copy of every city location, kept as two primitive arrays so solvers can
+ * read coordinates from contiguous memory instead of going through City objects and decorators.
+ */
+public class CoordinateStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] xs = new int[INITIAL_CAPACITY];
+    private int[] ys = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+
+    /**
+     * Append a location.
+     * @param x The X location of the city
+     * @param y The Y location of the city
+     * @return Index of the new location
+     */
+    public int add(int x, int y) {
+        ensureCapacity(size + 1);
+        xs[size] = x;
+        ys[size] = y;
+        return size++;
+    }
+
+    /**
+     * Reserve room for at least the given number of locations.
+     * @param capacity Number of locations to make room for
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= xs.length)
+            return;
+        int grown = Math.max(capacity, xs.length + (xs.length >> 1));
+        xs = Arrays.copyOf(xs, grown);
+        ys = Arrays.copyOf(ys, grown);
+    }
+
+    /**
+     * Replace the location at an index.
+     * @param index Index of the location
+     * @param x The X location of the city
+     * @param y The Y location of the city
+     */
+    public void set(int index, int x, int y) {
+        xs[index] = x;
+        ys[index] = y;
+    }
+
+    /**
+     * Remove every location.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return Number of locations stored
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the location
+     * @return X location at the index
+     */
+    public int x(int index) {
+        return xs[index];
+    }
+
+    /**
+     * @param index Index of the location
+     * @return Y location at the index
+     */
+    public int y(int index) {
+        return ys[index];
+    }
+
+    /**
+     * @return Copy of every X location, exactly size() long
+     */
+    public int[] copyXs() {
+        return Arrays.copyOf(xs, size);
+    }
+
+    /**
+     * @return Copy of every Y location, exactly size() long
+     */
+    public int[] copyYs() {
+        return Arrays.copyOf(ys, size);
+    }
+}
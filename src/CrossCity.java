@@ -99,6 +99,18 @@ public class CrossCity extends CityDecorator {
         }
     }
 
+    /**
+     * footprint covers the four new squares as well as the decorated city.
+     */
+    @Override
+    public Rectangle footprint() {
+        Rectangle footprint = super.footprint();
+        for (Rectangle square : squares) {
+            footprint = footprint.union(square);
+        }
+        return footprint;
+    }
+
     /**
      * gets x location of the base city.
      * 
@@ -0,0 +1,179 @@
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Class that groups the cities with DBSCAN and connects each cluster in a loop. A city with at least
+ * minPoints cities (itself included) within radius is a core city; core cities within radius of each
+ * other share a cluster, and every other city within radius of a core city joins it as a border city.
+ * Cities that are neither are noise and stay unconnected. Radius queries go through a SpatialGrid, so
+ * the number of clusters does not have to be chosen up front and irregular shapes are kept whole.
+ */
+public class DensityCluster extends Strategy {
+
+    /**
+     * Neighbourhood size, including the city itself, used by the default constructor.
+     */
+    public static final int DEFAULT_MIN_POINTS = 4;
+
+    /**
+     * Share of cities that should be core cities when the radius is picked automatically.
+     */
+    private static final double CORE_SHARE = 0.9;
+
+    private static final int NOISE = -1;
+    private static final int UNVISITED = -2;
+    private static final int INTERRUPT_CHECK_MASK = 0x3FF;
+
+    private final double radius;
+    private final int minPoints;
+    private double usedRadius;
+    private int clusterCount;
+
+
+    /**
+     * Instantiates the clustering with the default neighbourhood size and a radius picked from the
+     * cities on every run.
+     */
+    public DensityCluster() {
+        this(0, DEFAULT_MIN_POINTS);
+    }
+
+    /**
+     * Instantiates the clustering.
+     * @param radius Neighbourhood radius in pixels, or 0 to pick one from the cities on every run
+     * @param minPoints Number of cities, including itself, a city needs within radius to be a core city
+     */
+    public DensityCluster(double radius, int minPoints) {
+        if (minPoints < 1)
+            throw new IllegalArgumentException("minPoints must be at least 1");
+        this.radius = radius;
+        this.minPoints = minPoints;
+    }
+
+
+    /**
+     * Invokes the DBSCAN clustering algorithm.
+     * @param cities List of cities to map
+     * @return Paths between cities as a tour
+     */
+    public Tour runClustering(List<City> cities) throws InterruptedException {
+        if (cities == null || cities.isEmpty()) return null;
+        DistanceTable table = DistanceTable.of(cities);
+        int[] assignment = cluster(table.xs, table.ys);
+        return Cluster.getAllClusterPaths(assignment, clusterCount);
+    }
+
+    /**
+     * @return Radius the last run used
+     */
+    public double getRadius() {
+        return usedRadius;
+    }
+
+    /**
+     * @return Number of clusters the last run found
+     */
+    public int getClusterCount() {
+        return clusterCount;
+    }
+
+
+    /**
+     * Cluster the given coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @return Cluster number of every city, or -1 for noise
+     */
+    int[] cluster(int[] xs, int[] ys) throws InterruptedException {
+        int n = xs.length;
+        SpatialGrid grid = new SpatialGrid(xs, ys, n);
+        usedRadius = radius > 0 ? radius : pickRadius(grid, n);
+        int[] label = new int[n];
+        Arrays.fill(label, UNVISITED);
+        int[] queue = new int[n];
+        clusterCount = 0;
+        for (int city = 0; city < n; city++) {
+            if ((city & INTERRUPT_CHECK_MASK) == 0 && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (label[city] != UNVISITED)
+                continue;
+            int[] neighbours = grid.within(city, usedRadius);
+            if (neighbours.length + 1 < minPoints) {
+                label[city] = NOISE;
+                continue;
+            }
+
+            //   Breadth-first expansion from a new core city. A city is labelled as it is queued so it
+            // is queued at most once, and only core cities pass their neighbours on.
+
+            int cluster = clusterCount++;
+            label[city] = cluster;
+            int head = 0, tail = 0;
+            for (int other : neighbours)
+                tail = enqueue(label, queue, tail, other, cluster);
+            while (head < tail) {
+                if ((head & INTERRUPT_CHECK_MASK) == 0 && Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                int current = queue[head++];
+                int[] reached = grid.within(current, usedRadius);
+                if (reached.length + 1 < minPoints)
+                    continue;
+                for (int other : reached)
+                    tail = enqueue(label, queue, tail, other, cluster);
+            }
+        }
+        return label;
+    }
+
+
+    //   A noise city next to a core city becomes a border city. It is not queued, since it was already
+    // found not to be a core city.
+
+    private static int enqueue(int[] label, int[] queue, int tail, int city, int cluster) {
+        if (label[city] == NOISE) {
+            label[city] = cluster;
+        } else if (label[city] == UNVISITED) {
+            label[city] = cluster;
+            queue[tail++] = city;
+        }
+        return tail;
+    }
+
+
+    //   The distance from every city to its (minPoints - 1)-th nearest neighbour is the smallest radius
+    // that makes it a core city. Taking a high percentile of those distances makes most cities core
+    // and leaves the sparse outliers as noise.
+
+    private double pickRadius(SpatialGrid grid, int n) throws InterruptedException {
+        int k = minPoints - 1;
+        if (k == 0 || n <= k)
+            return 0;
+        double[] reach = new double[n];
+        for (int city = 0; city < n; city++) {
+            if ((city & INTERRUPT_CHECK_MASK) == 0 && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int[] nearest = grid.nearest(city, k);
+            int farthest = nearest[nearest.length - 1];
+            reach[city] = Math.hypot((double) grid.xs[city] - grid.xs[farthest],
+                    (double) grid.ys[city] - grid.ys[farthest]);
+        }
+        Arrays.sort(reach);
+        return reach[(int) Math.min(n - 1, Math.floor(n * CORE_SHARE))];
+    }
+
+
+    /**
+     * Run the clustering algorithm to find the clusters.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runClustering(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.List;
+
+
+/**
+ * Distances between cities shared by every strategy. Coordinates are copied into primitive arrays
+ * once, so callers never go through the City getters or its decorators. For small maps every
+ * distance is computed up front into a packed upper-triangular matrix; for large maps distances are
+ * computed on the fly from the coordinate arrays.
+ */
+public class DistanceTable {
+
+    /**
+     * Largest number of cities for which the full matrix is built.
+     */
+    public static final int MATRIX_LIMIT = 2048;
+
+    final int[] xs;
+    final int[] ys;
+    private final int count;
+    private final boolean useMatrix;
+    private volatile double[] matrix;
+
+
+    /**
+     * Instantiates the table for the given coordinates. No distances are computed yet.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     */
+    public DistanceTable(int[] xs, int[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        this.count = xs.length;
+        this.useMatrix = count > 1 && count <= MATRIX_LIMIT;
+    }
+
+
+    /**
+     * Get the distance table for a list of cities. The list of a CitySnapshot and the CityDatabase's own
+     * list reuse their cached table.
+     * @param cities List of cities to measure
+     * @return Distance table indexed like the list
+     */
+    public static DistanceTable of(List<City> cities) {
+        CitySnapshot snapshot = CitySnapshot.of(cities);
+        if (snapshot != null)
+            return snapshot.table;
+        CityDatabase cityDB = CityDatabase.getInstance();
+        if (cities == cityDB.cities)
+            return cityDB.getDistanceTable();
+        int n = cities.size();
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = cities.get(i).getX();
+            ys[i] = cities.get(i).getY();
+        }
+        return new DistanceTable(xs, ys);
+    }
+
+    /**
+     * @return Number of cities in the table
+     */
+    public int size() {
+        return count;
+    }
+
+
+    /**
+     * @param a Index of the first city
+     * @param b Index of the second city
+     * @return Straight line distance between the two cities
+     */
+    public double distance(int a, int b) {
+        if (a == b)
+            return 0;
+        if (!useMatrix)
+            return Math.sqrt(squaredDistance(a, b));
+        double[] matrix = this.matrix;
+        if (matrix == null)
+            matrix = buildMatrix();
+        if (a > b) {
+            int swap = a;
+            a = b;
+            b = swap;
+        }
+        return matrix[a * (2 * count - a - 1) / 2 + (b - a - 1)];
+    }
+
+
+    //   Strategies on several threads can share one table, so the first of them builds the matrix and
+    // the rest wait for it.
+
+    private synchronized double[] buildMatrix() {
+        if (matrix != null)
+            return matrix;
+        double[] built = new double[count * (count - 1) / 2];
+        int k = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++)
+                built[k++] = Math.sqrt(squaredDistance(i, j));
+        }
+        matrix = built;
+        return built;
+    }
+
+
+    /**
+     * Squared distance, for comparisons that do not need the square root.
+     * @param a Index of the first city
+     * @param b Index of the second city
+     * @return Squared straight line distance between the two cities
+     */
+    public long squaredDistance(int a, int b) {
+        long dx = (long) xs[a] - xs[b];
+        long dy = (long) ys[a] - ys[b];
+        return dx * dx + dy * dy;
+    }
+}
@@ -1,6 +1,4 @@
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 
 /**
@@ -12,49 +10,37 @@ public class GreedyTSP extends Strategy {
     /**
      * Invokes the traveling salesman solution.
      * @param cities List of cities to map
-     * @return Paths between cities as a map
+     * @return Paths between cities as a tour
      */
-    public Map<City, City> runTravelingSalesman(List<City> cities) throws InterruptedException {
+    public Tour runTravelingSalesman(List<City> cities) throws InterruptedException {
         if (cities == null || cities.size() < 2 ) return null;
-        Map<City, City> paths = new HashMap<>();
-        City firstCity = cities.iterator().next();
-        City thisCity = firstCity;
-        City lastCity = null;
-        while (thisCity != null) {
-            City nearestCity = null;
-            double shortestDistance = Double.MAX_VALUE;
-            for (City otherCity : cities) {
-                if (Thread.interrupted()) {
-                    throw new InterruptedException();
-                }
-                if (thisCity == otherCity
-                        || paths.containsKey(otherCity)
-                        || paths.containsValue(otherCity)) continue;
-                double thisDistance = calculateDistance(thisCity, otherCity);
-                if (thisDistance < shortestDistance) {
-                    nearestCity = otherCity;
-                    shortestDistance = thisDistance;
-                }
-            }
-            if (nearestCity != null) paths.put(thisCity, nearestCity);
-            lastCity = thisCity;
-            thisCity = nearestCity;
-        }
-
-        // complete loop on TSP
-        if (firstCity != null && lastCity != null) {
-            paths.put(lastCity, firstCity);
-        }
-        return paths;
+        DistanceTable table = DistanceTable.of(cities);
+        return Tour.fromOrder(nearestNeighbourTour(table.xs, table.ys));
     }
 
 
-    private double calculateDistance(City cityA, City cityB) {
-        if (cityA == null || cityB == null || cityA.equals(cityB)) {
-            return Double.MAX_VALUE;
+    /**
+     * Builds the nearest neighbour tour starting from city 0. Each step asks a k-d tree for the
+     * nearest city not yet visited and removes it, so the whole tour takes about O(n log n).
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @return Visiting order of every city index
+     */
+    public int[] nearestNeighbourTour(int[] xs, int[] ys) throws InterruptedException {
+        int n = xs.length;
+        int[] tour = new int[n];
+        if (n == 0) return tour;
+        KdTree unvisited = new KdTree(xs, ys, n);
+        int thisCity = 0;
+        for (int i = 0; i < n; i++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            tour[i] = thisCity;
+            unvisited.remove(thisCity);
+            thisCity = unvisited.nearest(xs[thisCity], ys[thisCity]);
         }
-        return Math.sqrt(Math.pow(cityA.getX() - cityB.getX(), 2) +
-                Math.pow(cityA.getY() - cityB.getY(), 2));
+        return tour;
     }
 
 
@@ -64,8 +50,8 @@ public class GreedyTSP extends Strategy {
      */
     @Override
     public void createPath(CityDatabase cityDB) throws InterruptedException {
-        Map<City, City> path = runTravelingSalesman(cityDB.cities);
-        if(path != null)
-            cityDB.addConnections(path);
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runTravelingSalesman(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
     }
 }
@@ -0,0 +1,17 @@
+/**
+ * Class that generates a greedy TSP path and then improves it with 2-opt, Or-opt and or-3opt moves.
+ */
+public class GreedyTwoOptTSP extends GreedyTSP {
+
+    /**
+     * Run the greedy TSP algorithm followed by local search to find a shorter path.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runTravelingSalesman(snapshot.cities);
+        path = LocalSearch.improve(snapshot.cities, path, LocalSearch.DEFAULT_NEIGHBOURS);
+        applyResult(cityDB, snapshot, path);
+    }
+}
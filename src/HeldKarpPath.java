@@ -0,0 +1,152 @@
+import java.util.List;
+
+
+/**
+ * The TSP Pro algorithm that uses Held-Karp dynamic programming to find the absolute best path to take.
+ * Runs in O(n^2 * 2^n) time over a bitmask table of primitive doubles, falling back to the greedy
+ * algorithm when the table would not fit in the heap.
+ */
+public class HeldKarpPath extends Strategy {
+
+    /**
+     * Largest number of cities the table is ever built for, regardless of heap size.
+     */
+    public static final int MAX_CITIES = 25;
+
+    /**
+     * Share of the currently available heap that the table is allowed to take.
+     */
+    private static final double HEAP_FRACTION = 0.75;
+
+    private static final int INTERRUPT_CHECK_MASK = 0x3FF;
+
+
+    /**
+     * Check whether the dynamic programming table for the given number of cities fits in memory.
+     * @param cityCount Number of cities in the tour
+     * @return true if runHeldKarp() will run for this many cities
+     */
+    public static boolean canSolve(int cityCount) {
+        if (cityCount < 2 || cityCount > MAX_CITIES)
+            return false;
+        Runtime runtime = Runtime.getRuntime();
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        return requiredBytes(cityCount) < available * HEAP_FRACTION;
+    }
+
+
+    private static long requiredBytes(int cityCount) {
+        int others = cityCount - 1;
+        return (1L << others) * others * Double.BYTES;
+    }
+
+
+    /**
+     * Invokes the Held-Karp tsp algorithm.
+     * @param cities List of cities that will be visited and mapped.
+     * @return Guaranteed best paths between cities as a tour, or null if the table does not fit in memory
+     */
+    public Tour runHeldKarp(List<City> cities) throws InterruptedException {
+        if (cities == null || cities.size() < 2 || !canSolve(cities.size()))
+            return null;
+        int n = cities.size();
+        double[][] distances = buildDistances(cities);
+
+        //   City 0 is the fixed start. Every other city j is mapped to bit (j - 1), and
+        // cost[mask * others + (j - 1)] is the shortest path leaving city 0, visiting every
+        // city in mask exactly once and ending at j.
+
+        int others = n - 1;
+        int fullMask = (1 << others) - 1;
+        double[] cost;
+        try {
+            cost = new double[(fullMask + 1) * others];
+        } catch (OutOfMemoryError e) {
+            return null;
+        }
+        for (int mask = 1; mask <= fullMask; mask++) {
+            if ((mask & INTERRUPT_CHECK_MASK) == 0 && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int row = mask * others;
+            for (int j = 0; j < others; j++) {
+                int bit = 1 << j;
+                if ((mask & bit) == 0) {
+                    cost[row + j] = Double.MAX_VALUE;
+                    continue;
+                }
+                int rest = mask ^ bit;
+                if (rest == 0) {
+                    cost[row + j] = distances[0][j + 1];
+                    continue;
+                }
+                double best = Double.MAX_VALUE;
+                int restRow = rest * others;
+                for (int k = 0; k < others; k++) {
+                    if ((rest & (1 << k)) == 0)
+                        continue;
+                    double candidate = cost[restRow + k] + distances[k + 1][j + 1];
+                    if (candidate < best)
+                        best = candidate;
+                }
+                cost[row + j] = best;
+            }
+        }
+        return rebuildPath(distances, cost, others);
+    }
+
+
+    private double[][] buildDistances(List<City> cities) {
+        int n = cities.size();
+        DistanceTable table = DistanceTable.of(cities);
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++)
+                distances[i][j] = table.distance(i, j);
+        }
+        return distances;
+    }
+
+
+    //   Walks the table backwards from the full set. The predecessor of each city is the one that
+    // minimised its entry, so no separate parent table is needed.
+
+    private Tour rebuildPath(double[][] distances, double[] cost, int others) {
+        Tour path = new Tour(others + 1);
+        int mask = (1 << others) - 1;
+        int next = 0;
+        while (mask != 0) {
+            int row = mask * others;
+            int best = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int k = 0; k < others; k++) {
+                if ((mask & (1 << k)) == 0)
+                    continue;
+                double candidate = cost[row + k] + distances[k + 1][next];
+                if (best == -1 || candidate < bestCost) {
+                    best = k;
+                    bestCost = candidate;
+                }
+            }
+            path.connect(best + 1, next);
+            next = best + 1;
+            mask ^= 1 << best;
+        }
+        path.connect(0, next);
+        return path;
+    }
+
+    /**
+     * Run the Held-Karp algorithm to find the optimal path, or the greedy algorithm when there are too
+     * many cities for the table to fit in memory.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runHeldKarp(snapshot.cities);
+        if (path == null)
+            path = new GreedyTSP().runTravelingSalesman(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
+    }
+}
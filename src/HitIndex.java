@@ -0,0 +1,220 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Uniform hash grid over the footprints of the cities, used to answer hit tests without calling
+ * contains on every city. Each city is listed in every cell its footprint overlaps, so a hit test only
+ * has to look at the few cities listed in the cell under the point. The footprint comes from
+ * City.footprint(), which covers the extra shapes of decorated cities as well as the base square.
+ * Cells are kept in a hash table, so the grid grows with the map and costs nothing for empty space.
+ */
+public class HitIndex {
+
+    /**
+     * Width and height of a cell in pixels. A default-sized city with a cross fits in one to four cells.
+     */
+    public static final int CELL_SIZE = 64;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int UNUSED = -2;
+    private static final int NONE = -1;
+
+    //   Open addressing table from cell key to the first entry listed in the cell. Entries form singly
+    // linked lists through entryNext, and removed entries are kept on a free list for reuse, so adding
+    // and moving cities allocates nothing once the arrays have grown.
+
+    private long[] keys;
+    private int[] heads;
+    private int cellCount;
+    private int[] entryCity;
+    private int[] entryNext;
+    private int entryCount;
+    private int freeEntry;
+    private int[] left = new int[INITIAL_CAPACITY];
+    private int[] top = new int[INITIAL_CAPACITY];
+    private int[] right = new int[INITIAL_CAPACITY];
+    private int[] bottom = new int[INITIAL_CAPACITY];
+
+
+    /**
+     * Instantiates an empty index.
+     */
+    public HitIndex() {
+        clear();
+    }
+
+
+    /**
+     * Index a city.
+     * @param index Index of the city in the city list
+     * @param city City to index
+     */
+    public void add(int index, City city) {
+        ensureCapacity(index + 1);
+        Rectangle footprint = city.footprint();
+        left[index] = Math.floorDiv(footprint.x, CELL_SIZE);
+        top[index] = Math.floorDiv(footprint.y, CELL_SIZE);
+        right[index] = Math.floorDiv(footprint.x + Math.max(footprint.width, 1) - 1, CELL_SIZE);
+        bottom[index] = Math.floorDiv(footprint.y + Math.max(footprint.height, 1) - 1, CELL_SIZE);
+        for (int cx = left[index]; cx <= right[index]; cx++) {
+            for (int cy = top[index]; cy <= bottom[index]; cy++) {
+                int slot = slot(key(cx, cy), true);
+                int entry = newEntry();
+                entryCity[entry] = index;
+                entryNext[entry] = heads[slot];
+                heads[slot] = entry;
+            }
+        }
+    }
+
+    /**
+     * Index a city again after it moved or was replaced.
+     * @param index Index of the city in the city list
+     * @param city City now at the index
+     */
+    public void update(int index, City city) {
+        remove(index);
+        add(index, city);
+    }
+
+    /**
+     * Remove every city.
+     */
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        heads = new int[INITIAL_CAPACITY];
+        Arrays.fill(heads, UNUSED);
+        cellCount = 0;
+        entryCity = new int[INITIAL_CAPACITY];
+        entryNext = new int[INITIAL_CAPACITY];
+        entryCount = 0;
+        freeEntry = NONE;
+    }
+
+    /**
+     * Find the first city in list order that contains a location.
+     * @param cities The city list the index was built over
+     * @param x The X location to test
+     * @param y The Y location to test
+     * @return Index of the city, or -1 if none contains the location
+     */
+    public int find(List<City> cities, int x, int y) {
+        int slot = slot(key(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE)), false);
+        if (slot == NONE)
+            return -1;
+        int found = -1;
+        for (int entry = heads[slot]; entry != NONE; entry = entryNext[entry]) {
+            int index = entryCity[entry];
+            if ((found == -1 || index < found) && cities.get(index).contains(x, y))
+                found = index;
+        }
+        return found;
+    }
+
+
+    private void remove(int index) {
+        for (int cx = left[index]; cx <= right[index]; cx++) {
+            for (int cy = top[index]; cy <= bottom[index]; cy++) {
+                int slot = slot(key(cx, cy), false);
+                if (slot == NONE)
+                    continue;
+                int previous = NONE;
+                for (int entry = heads[slot]; entry != NONE; entry = entryNext[entry]) {
+                    if (entryCity[entry] != index) {
+                        previous = entry;
+                        continue;
+                    }
+                    if (previous == NONE) {
+                        heads[slot] = entryNext[entry];
+                    } else {
+                        entryNext[previous] = entryNext[entry];
+                    }
+                    entryNext[entry] = freeEntry;
+                    freeEntry = entry;
+                    break;
+                }
+            }
+        }
+    }
+
+
+    private int newEntry() {
+        if (freeEntry != NONE) {
+            int entry = freeEntry;
+            freeEntry = entryNext[entry];
+            return entry;
+        }
+        if (entryCount == entryCity.length) {
+            entryCity = Arrays.copyOf(entryCity, entryCount * 2);
+            entryNext = Arrays.copyOf(entryNext, entryCount * 2);
+        }
+        return entryCount++;
+    }
+
+
+    //   Linear probing; the table is kept at most half full. Cells that empty out keep their slot,
+    // since cities usually move back into the same area.
+
+    private int slot(long key, boolean create) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (heads[slot] != UNUSED) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        if (!create)
+            return NONE;
+        if (2 * (cellCount + 1) > keys.length) {
+            grow();
+            return slot(key, true);
+        }
+        keys[slot] = key;
+        heads[slot] = NONE;
+        cellCount++;
+        return slot;
+    }
+
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldHeads = heads;
+        keys = new long[oldKeys.length * 2];
+        heads = new int[oldKeys.length * 2];
+        Arrays.fill(heads, UNUSED);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] == UNUSED)
+                continue;
+            int slot = hash(oldKeys[i]) & mask;
+            while (heads[slot] != UNUSED)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            heads[slot] = oldHeads[i];
+        }
+    }
+
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= left.length)
+            return;
+        int grown = Math.max(capacity, left.length + (left.length >> 1));
+        left = Arrays.copyOf(left, grown);
+        top = Arrays.copyOf(top, grown);
+        right = Arrays.copyOf(right, grown);
+        bottom = Arrays.copyOf(bottom, grown);
+    }
+
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+
+    private static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
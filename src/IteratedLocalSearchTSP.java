@@ -0,0 +1,194 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Heuristic TSP algorithm for large maps. Starts from a space-filling curve tour, drives it to a
+ * 2-opt/Or-opt local optimum, then repeatedly kicks it with a segment-swap (double bridge) move and
+ * re-optimises around the kick, keeping the result only when the tour got shorter. Runs until the time
+ * budget is spent or the thread is interrupted, and always returns the best tour found.
+ */
+public class IteratedLocalSearchTSP extends Strategy {
+
+    /**
+     * Time budget used by the default constructor, in milliseconds.
+     */
+    public static final long DEFAULT_TIME_BUDGET = 3000;
+
+    /**
+     * Longest segment moved by a single kick.
+     */
+    private static final int MAX_KICK_SEGMENT = 50;
+
+    private final long timeBudget;
+    private final Random random = new Random(1);
+    private boolean interrupted;
+
+
+    /**
+     * Instantiates the algorithm with the default time budget.
+     */
+    public IteratedLocalSearchTSP() {
+        this(DEFAULT_TIME_BUDGET);
+    }
+
+    /**
+     * Instantiates the algorithm with the given time budget.
+     * @param timeBudget Time to spend improving the tour, in milliseconds
+     */
+    public IteratedLocalSearchTSP(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+
+    /**
+     * Invokes the iterated local search algorithm. If the thread is interrupted the best tour found so far
+     * is returned and the interrupt status is set again.
+     * @param cities List of cities to map
+     * @return Paths between cities as a tour
+     */
+    public Tour runIteratedLocalSearch(List<City> cities) {
+        if (cities == null || cities.size() < 2) return null;
+        DistanceTable table = DistanceTable.of(cities);
+        return Tour.fromOrder(solve(table.xs, table.ys));
+    }
+
+
+    /**
+     * Finds a short tour over the given coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @return Visiting order of every city index
+     */
+    public int[] solve(int[] xs, int[] ys) {
+        interrupted = false;
+        long deadline = System.nanoTime() + timeBudget * 1_000_000L;
+        int[] order = curveOrder(xs, ys);
+        if (order.length < 5)
+            return order;
+        LocalSearch search = new LocalSearch(xs, ys, LocalSearch.DEFAULT_NEIGHBOURS);
+        try {
+            search.improve(order);
+            double length = search.tourLength();
+            publish(search.tour, length, Double.NaN);
+            while (System.nanoTime() < deadline) {
+                search.beginJournal();
+                search.gained = 0;
+                double added = kick(search);
+                search.optimise();
+                if (search.gained - added > 1e-9) {
+                    search.commitJournal();
+                    length -= search.gained - added;
+                    publish(search.tour, length, Double.NaN);
+                } else {
+                    search.rollbackJournal();
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            search.rollbackJournal();
+            Thread.currentThread().interrupt();
+        }
+        return search.tour.clone();
+    }
+
+    /**
+     * @return true if the last run was cut short by an interrupt
+     */
+    public boolean wasInterrupted() {
+        return interrupted;
+    }
+
+
+    //   Swaps two short adjacent segments A and B so that ... x A B y ... becomes ... x B A y ..., which is
+    // the double bridge move restricted to one neighbourhood so it can be undone cheaply.
+
+    private double kick(LocalSearch search) {
+        int n = search.tour.length;
+        int maxSegment = Math.min(MAX_KICK_SEGMENT, (n - 2) / 2);
+        int firstLength = 1 + random.nextInt(maxSegment);
+        int secondLength = 1 + random.nextInt(maxSegment);
+        int start = random.nextInt(n);
+        int[] tour = search.tour;
+        int first = tour[start];
+        int last = tour[(start + firstLength - 1) % n];
+        int before = tour[(start + n - 1) % n];
+        int after = tour[(start + firstLength) % n];
+        int secondLast = tour[(start + firstLength + secondLength - 1) % n];
+        int end = tour[(start + firstLength + secondLength) % n];
+        double added = search.distance(before, after) + search.distance(secondLast, first)
+                + search.distance(last, end) - search.distance(before, first)
+                - search.distance(last, after) - search.distance(secondLast, end);
+        search.moveSegment(before, first, last, after, secondLast, end, true);
+        search.push(before);
+        search.push(first);
+        search.push(last);
+        search.push(after);
+        search.push(secondLast);
+        search.push(end);
+        return added;
+    }
+
+
+    //   Orders the cities along a Hilbert curve, which gives a starting tour roughly 25% above optimal
+    // in O(n log n) time.
+
+    private int[] curveOrder(int[] xs, int[] ys) {
+        int n = xs.length;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double scale = 65535.0 / Math.max(1L, Math.max((long) maxX - minX, (long) maxY - minY));
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((xs[i] - (long) minX) * scale);
+            int y = (int) ((ys[i] - (long) minY) * scale);
+            keys[i] = (hilbertIndex(x, y) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++)
+            order[i] = (int) keys[i];
+        return order;
+    }
+
+
+    private long hilbertIndex(int x, int y) {
+        long index = 0;
+        for (int s = 1 << 15; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = 65535 - x;
+                    y = 65535 - y;
+                }
+                int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return index;
+    }
+
+
+    /**
+     * Run the iterated local search algorithm to find a short path.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runIteratedLocalSearch(snapshot.cities);
+        if (wasInterrupted())
+            throw new InterruptedException();
+        applyResult(cityDB, snapshot, path);
+    }
+}
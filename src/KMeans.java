@@ -0,0 +1,357 @@
+import java.util.Random;
+
+
+/**
+ * K-means clustering engine over primitive coordinate arrays. Centres are seeded with k-means++ and
+ * Lloyd iterations run until no city changes cluster, or until the iteration limit is reached.
+ * The assignment step uses Hamerly's bounds: every city keeps an upper bound on the distance to its
+ * own centre and a lower bound on the distance to any other centre, and the full search over all
+ * centres is skipped whenever the bounds prove the city cannot change cluster.
+ */
+public class KMeans {
+
+    /**
+     * Iteration limit used by the short constructor.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    final int k;
+    final int maxIterations;
+    final Random random;
+    double[] centerXs;
+    double[] centerYs;
+    int[] assignment;
+    int iterations;
+    double[] upper;
+    double[] lower;
+    long distanceCalls;
+    long distanceCallsAvoided;
+
+
+    /**
+     * Instantiates the engine with the default iteration limit.
+     * @param k Number of clusters
+     */
+    public KMeans(int k) {
+        this(k, DEFAULT_MAX_ITERATIONS, new Random());
+    }
+
+    /**
+     * Instantiates the engine.
+     * @param k Number of clusters
+     * @param maxIterations Largest number of Lloyd iterations to run
+     * @param random Source of randomness for seeding
+     */
+    public KMeans(int k, int maxIterations, Random random) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        this.maxIterations = maxIterations;
+        this.random = random;
+    }
+
+
+    /**
+     * Cluster the given coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @return Cluster number of every city
+     */
+    public int[] cluster(int[] xs, int[] ys) throws InterruptedException {
+        int n = xs.length;
+        assignment = new int[n];
+        upper = new double[n];
+        lower = new double[n];
+        iterations = 0;
+        distanceCalls = 0;
+        distanceCallsAvoided = 0;
+        if (n == 0)
+            return assignment;
+        seed(xs, ys);
+        for (int i = 0; i < n; i++)
+            assignment[i] = -1;
+        boolean changed = true;
+        while (changed && iterations < maxIterations) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            changed = assignAll(xs, ys) > 0;
+            double[] moved = recalculateCenters(xs, ys);
+            if (updateAllBounds(moved))
+                changed = true;
+            iterations++;
+        }
+        return assignment;
+    }
+
+    /**
+     * @return Number of city to centre distances computed by the last run
+     */
+    public long getDistanceCalls() {
+        return distanceCalls;
+    }
+
+    /**
+     * @return Number of city to centre distances the bounds made unnecessary in the last run, compared
+     *         with checking every centre for every city on every iteration
+     */
+    public long getDistanceCallsAvoided() {
+        return distanceCallsAvoided;
+    }
+
+    /**
+     * @return Number of Lloyd iterations the last run took
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return X location of every cluster centre
+     */
+    public double[] getCenterXs() {
+        return centerXs;
+    }
+
+    /**
+     * @return Y location of every cluster centre
+     */
+    public double[] getCenterYs() {
+        return centerYs;
+    }
+
+
+    //   k-means++: the first centre is a random city and every further centre is a city picked with
+    // probability proportional to its squared distance from the nearest centre chosen so far.
+
+    void seed(int[] xs, int[] ys) {
+        int n = xs.length;
+        centerXs = new double[k];
+        centerYs = new double[k];
+        double[] nearest = new double[n];
+        int first = random.nextInt(n);
+        centerXs[0] = xs[first];
+        centerYs[0] = ys[first];
+        double total = 0;
+        for (int i = 0; i < n; i++) {
+            nearest[i] = squaredDistance(xs[i], ys[i], centerXs[0], centerYs[0]);
+            total += nearest[i];
+        }
+        for (int c = 1; c < k; c++) {
+            int chosen = random.nextInt(n);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= nearest[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            centerXs[c] = xs[chosen];
+            centerYs[c] = ys[chosen];
+            total = 0;
+            for (int i = 0; i < n; i++) {
+                double distance = squaredDistance(xs[i], ys[i], centerXs[c], centerYs[c]);
+                if (distance < nearest[i])
+                    nearest[i] = distance;
+                total += nearest[i];
+            }
+        }
+    }
+
+
+    /**
+     * Move every city to its nearest centre.
+     * @return Number of cities that changed cluster
+     */
+    int assignAll(int[] xs, int[] ys) {
+        return assign(xs, ys, centerSeparation(), 0, xs.length);
+    }
+
+
+    /**
+     * Move every city in a range to its nearest centre, skipping cities whose bounds show they cannot
+     * have changed cluster.
+     * @param separation Half the distance from each centre to its closest other centre
+     * @param from First city index
+     * @param to Index after the last city
+     * @return Number of cities that changed cluster
+     */
+    int assign(int[] xs, int[] ys, double[] separation, int from, int to) {
+        int changes = 0;
+        long calls = 0;
+        long avoided = 0;
+        for (int i = from; i < to; i++) {
+            int current = assignment[i];
+            if (current >= 0) {
+                double bound = Math.max(separation[current], lower[i]);
+                if (upper[i] <= bound) {
+                    avoided += k;
+                    continue;
+                }
+                upper[i] = Math.sqrt(squaredDistance(xs[i], ys[i], centerXs[current], centerYs[current]));
+                calls++;
+                if (upper[i] <= bound) {
+                    avoided += k - 1;
+                    continue;
+                }
+            }
+            int best = -1;
+            double bestDistance = Double.MAX_VALUE;
+            double secondDistance = Double.MAX_VALUE;
+            for (int c = 0; c < k; c++) {
+                double distance = squaredDistance(xs[i], ys[i], centerXs[c], centerYs[c]);
+                if (distance < bestDistance) {
+                    secondDistance = bestDistance;
+                    best = c;
+                    bestDistance = distance;
+                } else if (distance < secondDistance) {
+                    secondDistance = distance;
+                }
+            }
+            calls += k;
+            upper[i] = Math.sqrt(bestDistance);
+            lower[i] = Math.sqrt(secondDistance);
+            if (best != current) {
+                assignment[i] = best;
+                changes++;
+            }
+        }
+        synchronized (this) {
+            distanceCalls += calls;
+            distanceCallsAvoided += avoided;
+        }
+        return changes;
+    }
+
+
+    //   Half the distance from each centre to the closest other centre. A city closer than that to its
+    // own centre is closer to it than to any other centre.
+
+    double[] centerSeparation() {
+        double[] separation = new double[k];
+        for (int c = 0; c < k; c++) {
+            double closest = Double.MAX_VALUE;
+            for (int other = 0; other < k; other++) {
+                if (other != c)
+                    closest = Math.min(closest, squaredDistance(centerXs[c], centerYs[c], centerXs[other], centerYs[other]));
+            }
+            separation[c] = closest == Double.MAX_VALUE ? Double.MAX_VALUE : Math.sqrt(closest) / 2;
+        }
+        return separation;
+    }
+
+
+    /**
+     * Loosen the bounds of every city by how far the centres moved.
+     * @param moved Distance each centre moved
+     * @return true if any centre moved
+     */
+    boolean updateAllBounds(double[] moved) {
+        return updateBounds(moved, 0, assignment.length);
+    }
+
+
+    /**
+     * Loosen the bounds of every city in a range by how far the centres moved.
+     * @param moved Distance each centre moved
+     * @param from First city index
+     * @param to Index after the last city
+     * @return true if any centre moved
+     */
+    boolean updateBounds(double[] moved, int from, int to) {
+        int fastest = -1;
+        double largest = 0;
+        double secondLargest = 0;
+        for (int c = 0; c < k; c++) {
+            if (moved[c] > largest) {
+                secondLargest = largest;
+                largest = moved[c];
+                fastest = c;
+            } else if (moved[c] > secondLargest) {
+                secondLargest = moved[c];
+            }
+        }
+        if (fastest == -1)
+            return false;
+        for (int i = from; i < to; i++) {
+            int c = assignment[i];
+            upper[i] += moved[c];
+            lower[i] -= c == fastest ? secondLargest : largest;
+        }
+        return true;
+    }
+
+
+    int nearestCenter(double x, double y) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            double distance = squaredDistance(x, y, centerXs[c], centerYs[c]);
+            if (distance < bestDistance) {
+                best = c;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Move every centre to the mean of its cities. A centre that lost all of its cities is moved onto
+     * a random city so that k clusters are kept.
+     * @return Distance each centre moved
+     */
+    double[] recalculateCenters(int[] xs, int[] ys) {
+        long[] sumX = new long[k];
+        long[] sumY = new long[k];
+        int[] counts = new int[k];
+        accumulate(xs, ys, 0, xs.length, sumX, sumY, counts);
+        return moveCenters(xs, ys, sumX, sumY, counts);
+    }
+
+
+    /**
+     * Add the coordinates of every city in a range to the sums of its cluster.
+     */
+    void accumulate(int[] xs, int[] ys, int from, int to, long[] sumX, long[] sumY, int[] counts) {
+        for (int i = from; i < to; i++) {
+            int c = assignment[i];
+            sumX[c] += xs[i];
+            sumY[c] += ys[i];
+            counts[c]++;
+        }
+    }
+
+
+    /**
+     * Move every centre to the mean given by the cluster sums.
+     * @return Distance each centre moved
+     */
+    double[] moveCenters(int[] xs, int[] ys, long[] sumX, long[] sumY, int[] counts) {
+        double[] moved = new double[k];
+        for (int c = 0; c < k; c++) {
+            double oldX = centerXs[c];
+            double oldY = centerYs[c];
+            if (counts[c] == 0) {
+                int city = random.nextInt(xs.length);
+                centerXs[c] = xs[city];
+                centerYs[c] = ys[city];
+            } else {
+                centerXs[c] = (double) sumX[c] / counts[c];
+                centerYs[c] = (double) sumY[c] / counts[c];
+            }
+            moved[c] = Math.sqrt(squaredDistance(oldX, oldY, centerXs[c], centerYs[c]));
+        }
+        return moved;
+    }
+
+
+    static double squaredDistance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.BitSet;
+
+
+/**
+ * Balanced 2-d tree over city coordinates that supports removing cities, for repeated
+ * nearest-remaining-city queries. The tree is implicit: the node of a range of the index array is
+ * its middle element, and every node keeps the number of cities still in its subtree so emptied
+ * subtrees are skipped without being searched.
+ */
+public class KdTree {
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] nodes;
+    private final int[] position;
+    private final int[] live;
+    private final BitSet removed;
+
+
+    /**
+     * Builds the tree over the first count coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @param count Number of cities to index
+     */
+    public KdTree(int[] xs, int[] ys, int count) {
+        this.xs = xs;
+        this.ys = ys;
+        nodes = new int[count];
+        for (int i = 0; i < count; i++)
+            nodes[i] = i;
+        build(0, count, 0);
+        position = new int[count];
+        for (int i = 0; i < count; i++)
+            position[nodes[i]] = i;
+        live = new int[count];
+        fillCounts(0, count);
+        removed = new BitSet(count);
+    }
+
+
+    private void build(int lo, int hi, int axis) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, axis);
+            build(mid + 1, hi, axis ^ 1);
+            hi = mid;
+            axis ^= 1;
+        }
+    }
+
+
+    //   Quickselect: rearranges nodes[lo..hi] so that nodes[k] holds the median along the axis, with
+    // nothing larger before it and nothing smaller after it.
+
+    private void select(int lo, int hi, int k, int axis) {
+        int[] coords = axis == 0 ? xs : ys;
+        while (hi > lo) {
+            int pivot = coords[nodes[(lo + hi) >>> 1]];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (coords[nodes[i]] < pivot) i++;
+                while (coords[nodes[j]] > pivot) j--;
+                if (i <= j) {
+                    int swap = nodes[i];
+                    nodes[i] = nodes[j];
+                    nodes[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j)
+                hi = j;
+            else if (k >= i)
+                lo = i;
+            else
+                return;
+        }
+    }
+
+
+    private int fillCounts(int lo, int hi) {
+        if (lo >= hi)
+            return 0;
+        int mid = (lo + hi) >>> 1;
+        live[mid] = hi - lo;
+        fillCounts(lo, mid);
+        fillCounts(mid + 1, hi);
+        return hi - lo;
+    }
+
+
+    /**
+     * Remove a city so that later queries skip it.
+     * @param city Index of the city to remove
+     */
+    public void remove(int city) {
+        if (removed.get(city))
+            return;
+        removed.set(city);
+        int target = position[city];
+        int lo = 0, hi = nodes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            live[mid]--;
+            if (target == mid)
+                return;
+            if (target < mid)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+    }
+
+    /**
+     * @param city Index of a city
+     * @return true if the city has been removed
+     */
+    public boolean isRemoved(int city) {
+        return removed.get(city);
+    }
+
+
+    /**
+     * Find the remaining city closest to a point. Ties go to the lowest city index.
+     * @param x X location of the point
+     * @param y Y location of the point
+     * @return Index of the nearest remaining city, or -1 if every city has been removed
+     */
+    public int nearest(int x, int y) {
+        Query query = new Query(x, y);
+        search(query, 0, nodes.length, 0);
+        return query.best;
+    }
+
+
+    private void search(Query query, int lo, int hi, int axis) {
+        if (lo >= hi)
+            return;
+        int mid = (lo + hi) >>> 1;
+        if (live[mid] == 0)
+            return;
+        int city = nodes[mid];
+        if (!removed.get(city))
+            query.offer(city, xs[city], ys[city]);
+        long diff = axis == 0 ? (long) query.x - xs[city] : (long) query.y - ys[city];
+        if (diff < 0) {
+            search(query, lo, mid, axis ^ 1);
+            if (diff * diff <= query.bestDistance)
+                search(query, mid + 1, hi, axis ^ 1);
+        } else {
+            search(query, mid + 1, hi, axis ^ 1);
+            if (diff * diff <= query.bestDistance)
+                search(query, lo, mid, axis ^ 1);
+        }
+    }
+
+
+    private static class Query {
+        final int x, y;
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+
+        Query(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        void offer(int city, int cityX, int cityY) {
+            long dx = (long) cityX - x;
+            long dy = (long) cityY - y;
+            long distance = dx * dx + dy * dy;
+            if (distance < bestDistance || (distance == bestDistance && city < best)) {
+                best = city;
+                bestDistance = distance;
+            }
+        }
+    }
+}
@@ -0,0 +1,511 @@
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Improvement stage that takes a finished tour and applies 2-opt, Or-opt and or-3opt moves until no
+ * move shortens it. Moves are only tried between a city and its nearest neighbours, and cities whose
+ * surroundings have not changed are skipped using don't-look bits, so each pass is close to linear.
+ */
+public class LocalSearch {
+
+    /**
+     * Number of nearest neighbours each city considers as move partners.
+     */
+    public static final int DEFAULT_NEIGHBOURS = 8;
+
+    /**
+     * Longest run of consecutive cities that an Or-opt move relocates.
+     */
+    private static final int MAX_SEGMENT = 3;
+
+    final int[] xs;
+    final int[] ys;
+    private final SpatialGrid grid;
+    private final int neighbourCount;
+    private final int[][] neighbours;
+    int[] tour;
+    int[] position;
+    private int[] queue;
+    private int queueHead, queueSize;
+    private boolean[] queued;
+    double gained;
+    private int[] journal;
+    private int journalSize = -1;
+
+
+    /**
+     * Prepares the neighbour lookup for the given coordinates. Each city's neighbour list is built the
+     * first time a move is tried from it, so a repair that only touches a few cities stays cheap.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @param neighbourCount Number of nearest neighbours per city
+     */
+    public LocalSearch(int[] xs, int[] ys, int neighbourCount) {
+        this.xs = xs;
+        this.ys = ys;
+        int n = xs.length;
+        grid = new SpatialGrid(xs, ys, n);
+        this.neighbourCount = neighbourCount;
+        neighbours = new int[n][];
+    }
+
+
+    /**
+     * Improves a tour as returned by the other strategies.
+     * @param cities List of cities the path visits
+     * @param path Closed tour over every city
+     * @param neighbourCount Number of nearest neighbours per city
+     * @return Improved paths between cities as a tour
+     */
+    public static Tour improve(List<City> cities, Tour path, int neighbourCount)
+            throws InterruptedException {
+        if (cities == null || path == null || cities.size() < 5)
+            return path;
+        int[] order = path.order(0);
+        if (order.length != cities.size())
+            return path;
+        DistanceTable table = DistanceTable.of(cities);
+        return Tour.fromOrder(new LocalSearch(table.xs, table.ys, neighbourCount).improve(order));
+    }
+
+
+    /**
+     * Applies 2-opt, Or-opt and or-3opt moves until the tour is a local optimum.
+     * @param order Visiting order of every city index exactly once
+     * @return Improved visiting order
+     */
+    public int[] improve(int[] order) throws InterruptedException {
+        return repair(order, order);
+    }
+
+
+    /**
+     * Applies 2-opt, Or-opt and or-3opt moves around the given cities only, for a tour that is
+     * already a local optimum everywhere else. The end cities of every move are queued again, so the
+     * work follows the damaged part of the tour rather than its length.
+     * @param order Visiting order of every city index exactly once
+     * @param damaged Cities to start from
+     * @return Improved visiting order
+     */
+    public int[] repair(int[] order, int[] damaged) throws InterruptedException {
+        load(order);
+        if (order.length < 5)
+            return tour;
+        for (int city : damaged)
+            push(city);
+        optimise();
+        return tour;
+    }
+
+
+    /**
+     * Takes a copy of the given tour as the current tour, with an empty queue.
+     * @param order Visiting order of every city index exactly once
+     */
+    void load(int[] order) {
+        int n = order.length;
+        tour = order.clone();
+        position = new int[n];
+        for (int i = 0; i < n; i++)
+            position[tour[i]] = i;
+        queue = new int[n];
+        queued = new boolean[n];
+        queueHead = 0;
+        queueSize = 0;
+    }
+
+
+    /**
+     * Moves a city to a new location. The grid stops looking for it in its old cell, and the neighbour
+     * lists of the city and of its nearest cities at both locations are dropped, to be built again the
+     * next time they are used. Those are the lists most likely to gain or lose the city; any other
+     * list that still names it only offers a poorer move partner, since moves are always measured on
+     * the current locations.
+     * @param city Index of the city that moved
+     * @param x The new X location of the city
+     * @param y The new Y location of the city
+     */
+    void relocate(int city, int x, int y) {
+        dropNeighbours(city);
+        xs[city] = x;
+        ys[city] = y;
+        grid.moved(city);
+        neighbours[city] = null;
+        dropNeighbours(city);
+    }
+
+
+    private void dropNeighbours(int city) {
+        for (int c : neighbours(city))
+            neighbours[c] = null;
+    }
+
+
+    /**
+     * Moves a city whose location changed to the cheapest place next to one of its new nearest
+     * neighbours, then applies 2-opt, Or-opt and or-3opt moves around the cities that were touched.
+     * The rest of the current tour is assumed to still be a local optimum.
+     * @param city Index of the city whose location changed
+     */
+    void reinsert(int city) throws InterruptedException {
+        if (tour.length < 5)
+            return;
+        neighbours[city] = null;
+        int before = previous(city);
+        int after = next(city);
+        double removed = distance(before, city) + distance(city, after) - distance(before, after);
+        int bestT1 = -1;
+        double bestCost = removed - 1e-9;
+        for (int c : neighbours(city)) {
+            for (int side = 0; side < 2; side++) {
+                int t1 = side == 0 ? c : previous(c);
+                int t2 = next(t1);
+                if (t1 == city || t2 == city)
+                    continue;
+                double cost = distance(t1, city) + distance(city, t2) - distance(t1, t2);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestT1 = t1;
+                }
+            }
+        }
+        push(city);
+        push(before);
+        push(after);
+        if (bestT1 != -1) {
+            int bestT2 = next(bestT1);
+            gained += removed - bestCost;
+            moveSegment(before, city, city, after, bestT1, bestT2, false);
+            push(bestT1);
+            push(bestT2);
+        }
+        optimise();
+    }
+
+
+    /**
+     * Runs moves for every queued city until the queue is empty.
+     */
+    void optimise() throws InterruptedException {
+        while (queueSize > 0) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int city = pop();
+            while (improveTwoOpt(city) || improveOrOpt(city) || improveOrThreeOpt(city)) {
+                // keep working on the same city while it keeps improving
+            }
+        }
+    }
+
+
+    void push(int city) {
+        if (queued[city])
+            return;
+        queued[city] = true;
+        queue[(queueHead + queueSize) % queue.length] = city;
+        queueSize++;
+    }
+
+
+    private int pop() {
+        int city = queue[queueHead];
+        queueHead = (queueHead + 1) % queue.length;
+        queueSize--;
+        queued[city] = false;
+        return city;
+    }
+
+
+    int[] neighbours(int city) {
+        int[] list = neighbours[city];
+        if (list == null) {
+            list = grid.nearest(city, neighbourCount);
+            neighbours[city] = list;
+        }
+        return list;
+    }
+
+
+    double distance(int a, int b) {
+        double dx = xs[a] - xs[b];
+        double dy = ys[a] - ys[b];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+
+    int next(int city) {
+        int i = position[city] + 1;
+        return tour[i == tour.length ? 0 : i];
+    }
+
+
+    int previous(int city) {
+        int i = position[city] - 1;
+        return tour[i < 0 ? tour.length - 1 : i];
+    }
+
+
+    private boolean improveTwoOpt(int a) {
+        for (int direction = 0; direction < 2; direction++) {
+            int b = direction == 0 ? next(a) : previous(a);
+            double removed = distance(a, b);
+            for (int c : neighbours(a)) {
+                double added = distance(a, c);
+                if (added >= removed)
+                    break;
+                int d = direction == 0 ? next(c) : previous(c);
+                if (c == b || d == a)
+                    continue;
+                double gain = removed + distance(c, d) - added - distance(b, d);
+                if (gain > 1e-9) {
+                    gained += gain;
+                    move(a, b, c, d);
+                    push(a);
+                    push(b);
+                    push(c);
+                    push(d);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    //   Moves the run of cities starting at first to sit between some neighbour t1 and the city t2 after
+    // it, either way round. The run is taken in the direction of next(), and t2 = next(t1) likewise.
+
+    private boolean improveOrOpt(int first) {
+        int n = tour.length;
+        int last = first;
+        for (int length = 1; length <= MAX_SEGMENT && length + 3 <= n; length++) {
+            if (length > 1)
+                last = next(last);
+            int before = previous(first);
+            int after = next(last);
+            double removed = distance(before, first) + distance(last, after) - distance(before, after);
+            if (removed <= 1e-9)
+                continue;
+            for (int end = 0; end < 2; end++) {
+                int anchor = end == 0 ? first : last;
+                for (int c : neighbours(anchor)) {
+                    if (distance(anchor, c) >= removed)
+                        break;
+                    if (inSegment(c, first, length))
+                        continue;
+                    for (int side = 0; side < 2; side++) {
+                        int t1 = side == 0 ? c : previous(c);
+                        int t2 = next(t1);
+                        if (inSegment(t1, first, length) || inSegment(t2, first, length))
+                            continue;
+                        double base = distance(t1, t2);
+                        double reversed = distance(t1, last) + distance(first, t2) - base;
+                        double forward = distance(t1, first) + distance(last, t2) - base;
+                        if (removed - Math.min(reversed, forward) > 1e-9) {
+                            gained += removed - Math.min(reversed, forward);
+                            moveSegment(before, first, last, after, t1, t2, forward < reversed);
+                            push(before);
+                            push(after);
+                            push(first);
+                            push(last);
+                            push(t1);
+                            push(t2);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    //   Or-3opt: swaps two neighbouring runs of cities of any length without reversing either, the
+    // pure 3-opt move that 2-opt and Or-opt cannot make. The tour t1 -> t2..x -> y..c -> d becomes
+    // t1 -> y..c -> t2..x -> d. It is searched for like a Lin-Kernighan step: each new edge leaves
+    // the end of the edge just removed for one of its nearest neighbours, and the search goes on only
+    // while the gain so far stays positive. Only t2 = next(t1) is tried: the mirror image of a move is
+    // the same move seen from d, so the other direction would only double the cost.
+
+    private boolean improveOrThreeOpt(int t1) {
+        int t2 = next(t1);
+        double removed = distance(t1, t2);
+        for (int c : neighbours(t2)) {
+            double g1 = removed - distance(t2, c);
+            if (g1 <= 0)
+                break;
+            int d = next(c);
+            if (c == t1 || d == t1)
+                continue;
+            int cOffset = offset(t2, c);
+            double g1Open = g1 + distance(c, d);
+            for (int x : neighbours(d)) {
+                double g2 = g1Open - distance(d, x);
+                if (g2 <= 0)
+                    break;
+                if (offset(t2, x) >= cOffset)
+                    continue;
+                int y = next(x);
+                double gain = g2 + distance(x, y) - distance(t1, y);
+                if (gain > 1e-9) {
+                    gained += gain;
+                    moveSegment(x, y, c, d, t1, t2, true);
+                    push(t1);
+                    push(t2);
+                    push(c);
+                    push(d);
+                    push(x);
+                    push(y);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+
+    //   Number of steps from one city to another, going round the tour in the direction of next().
+
+    private int offset(int from, int to) {
+        int offset = position[to] - position[from];
+        return offset < 0 ? offset + tour.length : offset;
+    }
+
+
+    private boolean inSegment(int city, int first, int length) {
+        int offset = position[city] - position[first];
+        if (offset < 0)
+            offset += tour.length;
+        return offset < length;
+    }
+
+
+    void moveSegment(int before, int first, int last, int after, int t1, int t2, boolean keepOrder) {
+        move(before, first, t1, t2);
+        move(before, t1, after, last);
+        if (keepOrder)
+            move(t1, last, first, t2);
+    }
+
+
+    /**
+     * Replaces edges (a, b) and (c, d) with (a, c) and (b, d). Both removed edges must run the same way
+     * round the tour, that is b follows a exactly when d follows c.
+     */
+    void move(int a, int b, int c, int d) {
+        if (next(a) != b) {
+            int swap = a;
+            a = b;
+            b = swap;
+            swap = c;
+            c = d;
+            d = swap;
+        }
+        reverse(position[b], position[c]);
+    }
+
+
+    //   Reverses the cities from position from to position to, wrapping around the end of the array.
+    // Reversing the rest of the tour instead gives the same cycle, so the shorter side is used.
+
+    private void reverse(int from, int to) {
+        int n = tour.length;
+        int length = to - from;
+        if (length < 0)
+            length += n;
+        length++;
+        if (length * 2 > n) {
+            int start = to + 1 == n ? 0 : to + 1;
+            to = from == 0 ? n - 1 : from - 1;
+            from = start;
+            length = n - length;
+        }
+        if (journalSize >= 0) {
+            if (journalSize + 2 > journal.length)
+                journal = Arrays.copyOf(journal, journal.length * 2);
+            journal[journalSize++] = from;
+            journal[journalSize++] = to;
+        }
+        for (int swaps = length / 2; swaps > 0; swaps--) {
+            int a = tour[from];
+            int b = tour[to];
+            tour[from] = b;
+            position[b] = from;
+            tour[to] = a;
+            position[a] = to;
+            from = from + 1 == n ? 0 : from + 1;
+            to = to == 0 ? n - 1 : to - 1;
+        }
+    }
+
+
+    /**
+     * Start recording every change to the tour so it can be undone with rollback().
+     */
+    void beginJournal() {
+        if (journal == null)
+            journal = new int[64];
+        journalSize = 0;
+    }
+
+
+    /**
+     * Stop recording and keep every change made since beginJournal().
+     */
+    void commitJournal() {
+        journalSize = -1;
+    }
+
+
+    /**
+     * Copy every change recorded since beginJournal() into a set of connections, which must hold the
+     * current tour as it was when recording began. Only the cities whose successor may have changed
+     * are written, so the cost follows the recorded reversals rather than the length of the tour.
+     * @param paths Connections to bring up to date
+     */
+    void applyJournal(Tour paths) {
+        int n = tour.length;
+
+        //   A reversal of positions from to to changes the successors at positions from - 1 to to.
+        // Positions outside every such range kept both their city and its successor throughout.
+
+        for (int i = 0; i < journalSize; i += 2) {
+            int p = journal[i] == 0 ? n - 1 : journal[i] - 1;
+            int to = journal[i + 1];
+            while (true) {
+                int q = p + 1 == n ? 0 : p + 1;
+                paths.connect(tour[p], tour[q]);
+                if (p == to)
+                    break;
+                p = q;
+            }
+        }
+    }
+
+
+    /**
+     * Stop recording and undo every change made since beginJournal(). Each reversal is its own
+     * inverse, so the recorded reversals are simply replayed backwards.
+     */
+    void rollbackJournal() {
+        int size = journalSize;
+        journalSize = -1;
+        for (int i = size - 2; i >= 0; i -= 2)
+            reverse(journal[i], journal[i + 1]);
+        while (queueSize > 0)
+            pop();
+    }
+
+
+    /**
+     * @return Length of the current tour
+     */
+    double tourLength() {
+        double total = 0;
+        for (int i = 0; i < tour.length; i++)
+            total += distance(tour[i], tour[(i + 1) % tour.length]);
+        return total;
+    }
+}
@@ -0,0 +1,381 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Loads the same files as TSPLoader, but maps the file into memory and parses the numbers straight
+ * from the mapped bytes instead of making a String for every line. Only city names and header lines
+ * are ever decoded. The node section is cut into chunks at line breaks and the chunks are parsed on a
+ * fork/join pool, each into its own array of cities, which are then added in file order with one bulk
+ * insert. The CityDatabase needs a City per node to draw and hit test, and fills its coordinate store
+ * from them in the same insert, so the coordinates are not written to the store separately. Files too
+ * large to map in one piece are read line by line instead.
+ */
+public class MappedTSPLoader extends TSPLoader {
+
+    /**
+     * Smallest number of bytes worth parsing on a thread of its own.
+     */
+    public static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private static final int FIELDS = 4;
+
+    private final int threads;
+
+
+    /**
+     * Instantiates a loader that parses on every available processor.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    public MappedTSPLoader(CityDatabase cityDB) {
+        this(cityDB, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Instantiates a loader.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     * @param threads Largest number of threads to parse the node section on
+     */
+    public MappedTSPLoader(CityDatabase cityDB, int threads) {
+        super(cityDB);
+        this.threads = Math.max(threads, 1);
+    }
+
+
+    /**
+     * Load a file.
+     * @param file File to read
+     */
+    @Override
+    public void load(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                super.load(file);
+                return;
+            }
+            load(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Load from the bytes of a TSPLIB file, from index 0 up to the limit. The buffer is only read
+     * with absolute gets, so its position is left alone.
+     * @param buffer Bytes of a TSPLIB file
+     */
+    public void load(ByteBuffer buffer) throws IOException {
+        int end = buffer.limit();
+        int position = readHeader(buffer, end);
+        cityCount = 0;
+        connectionCount = 0;
+        Chunk[] chunks = parseNodes(buffer, position, end);
+
+        //   Chunks after the one holding the end of the node section parsed connection lines as if
+        // they were nodes; they are dropped, along with any error they ran into.
+
+        int last = 0;
+        int total = 0;
+        while (last < chunks.length) {
+            if (chunks[last].error != null)
+                throw chunks[last].error;
+            total += chunks[last].count;
+            if (chunks[last].markerStart != -1)
+                break;
+            last++;
+        }
+        City[] cities = new City[total];
+        int filled = 0;
+        for (int c = 0; c < chunks.length && c <= last; c++) {
+            System.arraycopy(chunks[c].cities, 0, cities, filled, chunks[c].count);
+            filled += chunks[c].count;
+        }
+        cityDB.addCities(cities);
+        cityCount = total;
+        if (last < chunks.length) {
+            Chunk chunk = chunks[last];
+            if (text(buffer, chunk.markerStart, chunk.markerEnd).equals("EOFCoordinates"))
+                readConnections(new LineScanner(buffer, chunk.scanner.position, end));
+        }
+    }
+
+
+    private int readHeader(ByteBuffer buffer, int end) throws IOException {
+        type = null;
+        dimension = 0;
+        int position = 0;
+        while (position < end) {
+            int lineEnd = position;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+            String line = text(buffer, position, lineEnd);
+            position = Math.min(lineEnd + 1, end);
+            if (headerLine(line))
+                return position;
+        }
+        throw new IOException("No NODE_COORD_SECTION");
+    }
+
+
+    //   Cut the rest of the file into one chunk per thread, each ending just after a line break, and
+    // parse them all. Small files are parsed on the calling thread.
+
+    private Chunk[] parseNodes(ByteBuffer buffer, int start, int end) throws IOException {
+        int parts = (int) Math.max(1, Math.min(threads, ((long) end - start) / MIN_CHUNK_SIZE));
+        Chunk[] chunks = new Chunk[parts];
+        int from = start;
+        for (int p = 0; p < parts; p++) {
+            int to = p == parts - 1 ? end : (int) (start + ((long) end - start) * (p + 1) / parts);
+            to = Math.max(to, from);
+            while (to > from && to < end && buffer.get(to - 1) != '\n')
+                to++;
+            chunks[p] = new Chunk(buffer, from, to);
+            from = to;
+        }
+        if (parts == 1) {
+            chunks[0].compute();
+            return chunks;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parts);
+        ForkJoinTask<Void> root = pool.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(chunks);
+            }
+        });
+        try {
+            root.get();
+        } catch (InterruptedException e) {
+            root.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return chunks;
+    }
+
+
+    private void readConnections(LineScanner scanner) throws IOException {
+        Tour connections = new Tour(cityDB.cities.size());
+        while (scanner.hasMore()) {
+            int count = scanner.nextLine();
+            if (count == 0)
+                continue;
+            if (!isNumber(scanner.buffer.get(scanner.starts[0])))
+                break;
+            if (count < 4)
+                throw scanner.malformed("Malformed connection line: ");
+            City one = cityDB.findCityAt(scanner.integer(0), scanner.integer(1));
+            City two = cityDB.findCityAt(scanner.integer(2), scanner.integer(3));
+            if (one != null && two != null) {
+                connections.connect(one.index, two.index);
+                connectionCount++;
+            }
+        }
+        cityDB.addConnections(connections);
+    }
+
+
+    private static boolean isNumber(byte b) {
+        return (b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.';
+    }
+
+
+    private static String text(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    //   Parses the node lines of one chunk into cities. Parsing stops at the first line that does not
+    // start with a number; its first field is kept as the marker that ended the node section. Errors
+    // are kept rather than thrown, since only the chunks before the marker are known to hold nodes.
+
+    private class Chunk extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final LineScanner scanner;
+        City[] cities;
+        int count = 0;
+        int markerStart = -1;
+        int markerEnd = -1;
+        IOException error = null;
+
+        Chunk(ByteBuffer buffer, int start, int stop) {
+            scanner = new LineScanner(buffer, start, stop);
+            cities = new City[(stop - start) / 24 + 16];
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                while (scanner.hasMore()) {
+                    int fields = scanner.nextLine();
+                    if (fields == 0)
+                        continue;
+                    if (!isNumber(scanner.buffer.get(scanner.starts[0]))) {
+                        markerStart = scanner.starts[0];
+                        markerEnd = scanner.ends[0];
+                        return;
+                    }
+                    if (fields < 3)
+                        throw scanner.malformed("Malformed node line: ");
+                    int x = scanner.coordinate(1);
+                    int y = scanner.coordinate(2);
+                    String name = fields > 3 ? text(scanner.buffer, scanner.starts[3], scanner.ends[3]) : "";
+                    if (count == cities.length)
+                        cities = Arrays.copyOf(cities, count * 2);
+                    cities[count++] = new BaseCity(x, y, name, color, SIZE);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+
+    //   Splits the lines of a byte range into whitespace separated fields and parses numbers from
+    // them in place. Only the first FIELDS fields of a line are recorded.
+
+    private static class LineScanner {
+        final ByteBuffer buffer;
+        final int stop;
+        final int[] starts = new int[FIELDS];
+        final int[] ends = new int[FIELDS];
+        int position;
+        int lineStart;
+
+        LineScanner(ByteBuffer buffer, int start, int stop) {
+            this.buffer = buffer;
+            this.position = start;
+            this.stop = stop;
+        }
+
+        boolean hasMore() {
+            return position < stop;
+        }
+
+        /**
+         * Split the next line into fields and move past its line break.
+         * @return Number of fields found, at most FIELDS
+         */
+        int nextLine() {
+            lineStart = position;
+            int count = 0;
+            while (position < stop) {
+                byte b = buffer.get(position);
+                if (b == '\n') {
+                    position++;
+                    break;
+                }
+                if (isBlank(b)) {
+                    position++;
+                    continue;
+                }
+                int start = position;
+                while (position < stop && !isBlank(buffer.get(position)))
+                    position++;
+                if (count < FIELDS) {
+                    starts[count] = start;
+                    ends[count] = position;
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Parse a field as a decimal number and truncate it to an int, as (int) Double.parseDouble
+         * would. Plain decimals of up to 15 significant digits are parsed directly; their integer part
+         * is the answer, since a double cannot round them across an integer. Anything else goes
+         * through Double.parseDouble.
+         */
+        int coordinate(int field) throws IOException {
+            int i = starts[field];
+            int end = ends[field];
+            boolean negative = false;
+            byte b = buffer.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
+            }
+            long whole = 0;
+            int digits = 0;
+            while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+                whole = whole * 10 + (b - '0');
+                digits++;
+                i++;
+            }
+            if (i < end && buffer.get(i) == '.') {
+                i++;
+                while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+                    digits++;
+                    i++;
+                }
+            }
+            if (i != end || digits == 0 || digits > 15) {
+                try {
+                    return (int) Double.parseDouble(text(buffer, starts[field], end));
+                } catch (NumberFormatException e) {
+                    throw malformed("Malformed number in line: ");
+                }
+            }
+            return (int) (double) (negative ? -whole : whole);
+        }
+
+        /**
+         * Parse a field as an int, as Integer.parseInt would.
+         */
+        int integer(int field) throws IOException {
+            int i = starts[field];
+            int end = ends[field];
+            boolean negative = false;
+            byte b = buffer.get(i);
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                i++;
+            }
+            if (i == end || end - i > 9) {
+                try {
+                    return Integer.parseInt(text(buffer, starts[field], end));
+                } catch (NumberFormatException e) {
+                    throw malformed("Malformed number in line: ");
+                }
+            }
+            int value = 0;
+            for (; i < end; i++) {
+                b = buffer.get(i);
+                if (b < '0' || b > '9')
+                    throw malformed("Malformed number in line: ");
+                value = value * 10 + (b - '0');
+            }
+            return negative ? -value : value;
+        }
+
+        IOException malformed(String message) {
+            int lineEnd = position;
+            while (lineEnd > lineStart && isBlank(buffer.get(lineEnd - 1)))
+                lineEnd--;
+            return new IOException(message + text(buffer, lineStart, lineEnd));
+        }
+
+        private static boolean isBlank(byte b) {
+            return b >= 0 && b <= ' ';
+        }
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.Random;
+
+
+/**
+ * Mini-batch k-means. Instead of a full Lloyd iteration over every city, each iteration samples a
+ * small batch of cities, assigns them to their nearest centre and pulls each centre towards its
+ * batch cities with a learning rate of one over the number of cities the centre has absorbed so far.
+ * The cost of an iteration depends on the batch size rather than the number of cities, so very
+ * large maps cluster in roughly constant time; only the final assignment touches every city.
+ */
+public class MiniBatchKMeans extends KMeans {
+
+    /**
+     * Number of cities sampled per iteration by the short constructor.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Centre movement, in pixels, below which the centres are considered settled.
+     */
+    private static final double TOLERANCE = 0.01;
+
+    /**
+     * Number of batches worth of cities that the k-means++ seeding is run on.
+     */
+    private static final int SEED_BATCHES = 4;
+
+    private final int batchSize;
+
+
+    /**
+     * Instantiates the engine with the default batch size and iteration limit.
+     * @param k Number of clusters
+     */
+    public MiniBatchKMeans(int k) {
+        this(k, DEFAULT_MAX_ITERATIONS, new Random(), DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Instantiates the engine.
+     * @param k Number of clusters
+     * @param maxIterations Largest number of batches to run
+     * @param random Source of randomness for seeding and sampling
+     * @param batchSize Number of cities sampled per iteration
+     */
+    public MiniBatchKMeans(int k, int maxIterations, Random random, int batchSize) {
+        super(k, maxIterations, random);
+        if (batchSize < 1)
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        this.batchSize = batchSize;
+    }
+
+
+    @Override
+    public int[] cluster(int[] xs, int[] ys) throws InterruptedException {
+        int n = xs.length;
+        assignment = new int[n];
+        iterations = 0;
+        distanceCalls = 0;
+        distanceCallsAvoided = 0;
+        if (n == 0)
+            return assignment;
+        seedFromSample(xs, ys);
+        long[] absorbed = new long[k];
+        int[] batch = new int[Math.min(batchSize, n)];
+        int[] nearest = new int[batch.length];
+        double settled = TOLERANCE * TOLERANCE;
+        while (iterations < maxIterations) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            for (int b = 0; b < batch.length; b++) {
+                batch[b] = random.nextInt(n);
+                nearest[b] = nearestCenter(xs[batch[b]], ys[batch[b]]);
+            }
+            distanceCalls += (long) batch.length * k;
+            double largestMove = 0;
+            for (int b = 0; b < batch.length; b++) {
+                int c = nearest[b];
+                double oldX = centerXs[c];
+                double oldY = centerYs[c];
+                double rate = 1.0 / ++absorbed[c];
+                centerXs[c] += rate * (xs[batch[b]] - centerXs[c]);
+                centerYs[c] += rate * (ys[batch[b]] - centerYs[c]);
+                largestMove = Math.max(largestMove, squaredDistance(oldX, oldY, centerXs[c], centerYs[c]));
+            }
+            iterations++;
+            if (largestMove < settled)
+                break;
+        }
+        for (int i = 0; i < n; i++) {
+            if ((i & 0xFFFF) == 0 && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            assignment[i] = nearestCenter(xs[i], ys[i]);
+        }
+        distanceCalls += (long) n * k;
+        return assignment;
+    }
+
+
+    //   k-means++ over every city would cost as much as a full iteration, so the seeds are picked
+    // from a random sample of a few batches instead.
+
+    private void seedFromSample(int[] xs, int[] ys) {
+        int n = xs.length;
+        int size = (int) Math.min(n, (long) batchSize * SEED_BATCHES);
+        if (size == n) {
+            seed(xs, ys);
+            return;
+        }
+        int[] sampleXs = new int[size];
+        int[] sampleYs = new int[size];
+        for (int i = 0; i < size; i++) {
+            int city = random.nextInt(n);
+            sampleXs[i] = xs[city];
+            sampleYs[i] = ys[city];
+        }
+        seed(sampleXs, sampleYs);
+    }
+}
@@ -1,15 +1,33 @@
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
+import javax.swing.Timer;
 
 
 /**
  * Abstract implementation of the observable pattern. This holds a collection of
  * observers to notify.
+ * Besides notifying straight away with sendNotifications(), changes can be posted with
+ * postNotification(). Posted changes are merged with coalesce() and delivered on the event dispatch
+ * thread at most once per FRAME_INTERVAL, and changes posted between beginBatch() and commitBatch()
+ * are held back until the outermost commit.
  * @author Nate Robinson
  */
 public abstract class Observable {
+
+    /**
+     * Shortest time between two deliveries of posted changes, in milliseconds.
+     */
+    public static final int FRAME_INTERVAL = 16;
+
     private List<IObserver> observers = new ArrayList<>();
+    private int batchDepth = 0;
+    private Object pending = null;
+    private boolean flushScheduled = false;
+    private long lastFlush = 0;
+    private Timer flushTimer = null;
     
     /**
      * Add an observer to the collection.
@@ -35,4 +53,88 @@ public abstract class Observable {
             ob.update(data);
         }
     }
+
+    /**
+     * Post a change to be delivered to the observers later, merged with any other change posted before
+     * the delivery.
+     * @param data Change to deliver
+     */
+    public void postNotification(Object data) {
+        synchronized (this) {
+            pending = pending == null ? data : coalesce(pending, data);
+            if (batchDepth > 0)
+                return;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Start holding back posted changes. Batches nest.
+     */
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * End a batch started with beginBatch(). Once the outermost batch ends, everything posted during
+     * it is delivered as one merged change.
+     */
+    public void commitBatch() {
+        synchronized (this) {
+            if (batchDepth == 0)
+                throw new IllegalStateException("commitBatch() without beginBatch()");
+            batchDepth--;
+            if (batchDepth > 0 || pending == null)
+                return;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Merge two posted changes. The default keeps only the later one.
+     * @param pending Change posted earlier and not yet delivered, which may be modified and returned
+     * @param next Change posted later
+     * @return Change that stands for both
+     */
+    protected Object coalesce(Object pending, Object next) {
+        return next;
+    }
+
+
+    //   One timer is made on the first flush and restarted for every later one. It does not repeat,
+    // and flushScheduled keeps it from being restarted before it has fired.
+
+    private synchronized void scheduleFlush() {
+        if (flushScheduled)
+            return;
+        flushScheduled = true;
+        long sinceLast = System.currentTimeMillis() - lastFlush;
+        int delay = (int) Math.max(0, Math.min(FRAME_INTERVAL, FRAME_INTERVAL - sinceLast));
+        if (flushTimer == null) {
+            flushTimer = new Timer(delay, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    flush();
+                }
+            });
+            flushTimer.setRepeats(false);
+        }
+        flushTimer.setInitialDelay(delay);
+        flushTimer.restart();
+    }
+
+
+    private void flush() {
+        Object data;
+        synchronized (this) {
+            flushScheduled = false;
+            lastFlush = System.currentTimeMillis();
+            if (batchDepth > 0)
+                return;
+            data = pending;
+            pending = null;
+        }
+        if (data != null)
+            sendNotifications(data);
+    }
 }
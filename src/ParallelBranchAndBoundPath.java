@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Branch and bound TSP algorithm that spreads the search across every core. The first levels of the
+ * search tree are split into fork/join tasks and the best tour length is shared between them through
+ * an atomic field, so every worker prunes against the best tour any of them has found.
+ */
+public class ParallelBranchAndBoundPath extends BranchAndBoundPath {
+
+    /**
+     * Number of tour positions after the start city that are split into separate tasks.
+     */
+    private static final int SPLIT_DEPTH = 3;
+
+    //   One pool for every search, since a new pool per run starts and stops a thread per core each
+    // time the map changes. Its workers are daemon threads and stay idle between searches.
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final AtomicLong incumbent = new AtomicLong();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder prunes = new LongAdder();
+
+
+    /**
+     * Search every tour starting at city 0 on the shared fork/join pool. Interrupting the calling
+     * thread cancels every task and rethrows the interrupt, like the sequential search does. The pool
+     * is not shut down, so the tasks stop by checking whether the strategy was cancelled.
+     */
+    @Override
+    void solve() throws InterruptedException {
+        int n = distances.length;
+        incumbent.set(Double.doubleToLongBits(bestDistance));
+        nodes.reset();
+        prunes.reset();
+
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        visited[0] = true;
+        ForkJoinTask<Void> root = POOL.submit(new SearchTask(tour, 1, visited, 0));
+        try {
+            root.get();
+            // the tasks may have drained on the cancel flag before the interrupt reached get()
+            if (isCancelled())
+                throw new InterruptedException();
+        } catch (InterruptedException e) {
+            cancel();
+            root.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            nodeCount = nodes.sum();
+            pruneCount = prunes.sum();
+        }
+    }
+
+
+    private double incumbent() {
+        return Double.longBitsToDouble(incumbent.get());
+    }
+
+
+    private synchronized void offer(int[] tour, double length) {
+        if (length < bestDistance) {
+            bestDistance = length;
+            bestTour = tour.clone();
+            incumbent.set(Double.doubleToLongBits(length));
+            publish(bestTour, length, rootBound);
+        }
+    }
+
+
+    private class SearchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] tour;
+        private final int depth;
+        private final boolean[] visited;
+        private final double length;
+        private long taskNodes;
+        private long taskPrunes;
+
+        private SearchTask(int[] tour, int depth, boolean[] visited, double length) {
+            this.tour = tour;
+            this.depth = depth;
+            this.visited = visited;
+            this.length = length;
+        }
+
+        //   ForkJoinTask has an isCancelled() of its own, for the task rather than the strategy.
+
+        private boolean stopped() {
+            return ParallelBranchAndBoundPath.this.isCancelled();
+        }
+
+        @Override
+        protected void compute() {
+            if (depth > SPLIT_DEPTH || depth >= tour.length) {
+                search(depth, length);
+            } else {
+                split();
+            }
+            nodes.add(taskNodes);
+            prunes.add(taskPrunes);
+        }
+
+
+        private void split() {
+            if (stopped()) {
+                return;
+            }
+            taskNodes++;
+            int current = tour[depth - 1];
+            if (length + lowerBound(current, tour[0], visited) >= incumbent()) {
+                taskPrunes++;
+                return;
+            }
+            List<SearchTask> children = new ArrayList<>();
+            for (int next : nearestOrder(current, visited)) {
+                double extended = length + distances[current][next];
+                int[] childTour = tour.clone();
+                boolean[] childVisited = visited.clone();
+                childTour[depth] = next;
+                childVisited[next] = true;
+                children.add(new SearchTask(childTour, depth + 1, childVisited, extended));
+            }
+            invokeAll(children);
+        }
+
+
+        private void search(int depth, double length) {
+            if (stopped()) {
+                return;
+            }
+            taskNodes++;
+            int n = tour.length;
+            int current = tour[depth - 1];
+            if (depth == n) {
+                double total = length + distances[current][tour[0]];
+                if (total < incumbent())
+                    offer(tour, total);
+                return;
+            }
+            if (length + lowerBound(current, tour[0], visited) >= incumbent()) {
+                taskPrunes++;
+                return;
+            }
+            for (int next : nearestOrder(current, visited)) {
+                double extended = length + distances[current][next];
+                if (extended >= incumbent()) {
+                    taskPrunes++;
+                    continue;
+                }
+                visited[next] = true;
+                tour[depth] = next;
+                search(depth + 1, extended);
+                visited[next] = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * K-means engine that shards the cities across a fork/join pool. The assignment step, the bound
+ * updates and the centroid sums all run on contiguous ranges of cities; each range sums into its
+ * own long arrays and the partial sums are merged as the tasks join. The workers belong to a shared
+ * pool that is never shut down for a cancelled run, so every range first checks whether the strategy
+ * running the clustering was cancelled and skips its work if so.
+ */
+public class ParallelKMeans extends KMeans {
+
+    /**
+     * Number of cities below which a range is processed on a single thread.
+     */
+    private static final int CHUNK = 16384;
+
+    private final ForkJoinPool pool;
+    private final Strategy owner;
+
+
+    /**
+     * Instantiates the engine on the common fork/join pool.
+     * @param k Number of clusters
+     * @param owner Strategy whose cancellation stops the clustering, or null if it is never cancelled
+     */
+    public ParallelKMeans(int k, Strategy owner) {
+        this(k, DEFAULT_MAX_ITERATIONS, new Random(), ForkJoinPool.commonPool(), owner);
+    }
+
+    /**
+     * Instantiates the engine.
+     * @param k Number of clusters
+     * @param maxIterations Largest number of Lloyd iterations to run
+     * @param random Source of randomness for seeding
+     * @param pool Pool to run the shards on
+     * @param owner Strategy whose cancellation stops the clustering, or null if it is never cancelled
+     */
+    public ParallelKMeans(int k, int maxIterations, Random random, ForkJoinPool pool, Strategy owner) {
+        super(k, maxIterations, random);
+        this.pool = pool;
+        this.owner = owner;
+    }
+
+
+    /**
+     * Cluster the given coordinates. Cancelling the owner abandons the current iteration after at
+     * most one range per worker.
+     */
+    @Override
+    public int[] cluster(int[] xs, int[] ys) throws InterruptedException {
+        int[] result = super.cluster(xs, ys);
+        if (cancelled()) {
+            throw new InterruptedException();
+        }
+        return result;
+    }
+
+
+    private boolean cancelled() {
+        return owner != null && owner.isCancelled();
+    }
+
+
+    @Override
+    int assignAll(int[] xs, int[] ys) {
+        double[] separation = centerSeparation();
+        return pool.invoke(new AssignTask(xs, ys, separation, 0, xs.length));
+    }
+
+
+    @Override
+    boolean updateAllBounds(double[] moved) {
+        return pool.invoke(new BoundsTask(moved, 0, assignment.length));
+    }
+
+
+    @Override
+    double[] recalculateCenters(int[] xs, int[] ys) {
+        Sums sums = pool.invoke(new SumTask(xs, ys, 0, xs.length));
+        return moveCenters(xs, ys, sums.sumX, sums.sumY, sums.counts);
+    }
+
+
+    private class AssignTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+        private final int[] xs, ys;
+        private final double[] separation;
+        private final int from, to;
+
+        AssignTask(int[] xs, int[] ys, double[] separation, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.separation = separation;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (cancelled())
+                return 0;
+            if (to - from <= CHUNK)
+                return assign(xs, ys, separation, from, to);
+            int mid = (from + to) >>> 1;
+            AssignTask left = new AssignTask(xs, ys, separation, from, mid);
+            left.fork();
+            int right = new AssignTask(xs, ys, separation, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+
+
+    private class BoundsTask extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+        private final double[] moved;
+        private final int from, to;
+
+        BoundsTask(double[] moved, int from, int to) {
+            this.moved = moved;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (cancelled())
+                return false;
+            if (to - from <= CHUNK)
+                return updateBounds(moved, from, to);
+            int mid = (from + to) >>> 1;
+            BoundsTask left = new BoundsTask(moved, from, mid);
+            left.fork();
+            boolean right = new BoundsTask(moved, mid, to).compute();
+            return left.join() | right;
+        }
+    }
+
+
+    private static class Sums {
+        final long[] sumX, sumY;
+        final int[] counts;
+
+        Sums(int k) {
+            sumX = new long[k];
+            sumY = new long[k];
+            counts = new int[k];
+        }
+
+        Sums merge(Sums other) {
+            for (int c = 0; c < counts.length; c++) {
+                sumX[c] += other.sumX[c];
+                sumY[c] += other.sumY[c];
+                counts[c] += other.counts[c];
+            }
+            return this;
+        }
+    }
+
+
+    private class SumTask extends RecursiveTask<Sums> {
+        private static final long serialVersionUID = 1L;
+        private final int[] xs, ys;
+        private final int from, to;
+
+        SumTask(int[] xs, int[] ys, int from, int to) {
+            this.xs = xs;
+            this.ys = ys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sums compute() {
+            if (cancelled())
+                return new Sums(k);
+            if (to - from <= CHUNK) {
+                Sums sums = new Sums(k);
+                accumulate(xs, ys, from, to, sums.sumX, sums.sumY, sums.counts);
+                return sums;
+            }
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(xs, ys, from, mid);
+            left.fork();
+            Sums right = new SumTask(xs, ys, mid, to).compute();
+            return left.join().merge(right);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * Cluster-first, route-second TSP algorithm for very large maps. The cities are split into
+ * partitions with k-means, every partition is routed on its own core with the greedy tour and local
+ * search, and the partition tours are joined in the order of a tour over the partition centres. Only
+ * the seams between partitions are then repaired with local search, so the cost of the whole run is
+ * close to that of its largest partition.
+ */
+public class PartitionedTSP extends Strategy {
+
+    /**
+     * Average number of cities per partition used by the default constructor.
+     */
+    public static final int DEFAULT_PARTITION_SIZE = 5000;
+
+    /**
+     * Lloyd iterations spent on the partitions. Rough partitions route just as well, so k-means is
+     * stopped long before it converges.
+     */
+    private static final int PARTITION_ITERATIONS = 10;
+
+    //   One pool for every run, as in ParallelBranchAndBoundPath, so a run does not start and stop a
+    // thread per core. Its workers are daemon threads and stay idle between runs.
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final int partitionSize;
+
+
+    /**
+     * Instantiates the algorithm with the default partition size.
+     */
+    public PartitionedTSP() {
+        this(DEFAULT_PARTITION_SIZE);
+    }
+
+    /**
+     * Instantiates the algorithm.
+     * @param partitionSize Average number of cities per partition
+     */
+    public PartitionedTSP(int partitionSize) {
+        if (partitionSize < 1)
+            throw new IllegalArgumentException("partitionSize must be at least 1");
+        this.partitionSize = partitionSize;
+    }
+
+
+    /**
+     * Invokes the partitioned TSP algorithm.
+     * @param cities List of cities to map
+     * @return Paths between cities as a tour
+     */
+    public Tour runPartitioned(List<City> cities) throws InterruptedException {
+        if (cities == null || cities.size() < 2) return null;
+        DistanceTable table = DistanceTable.of(cities);
+        return Tour.fromOrder(solve(table.xs, table.ys));
+    }
+
+
+    /**
+     * Finds a short tour over the given coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @return Visiting order of every city index
+     */
+    public int[] solve(int[] xs, int[] ys) throws InterruptedException {
+        int n = xs.length;
+        int k = Math.max(1, n / partitionSize);
+        if (k == 1)
+            return route(xs, ys);
+
+        Random random = new Random();
+        KMeans kMeans;
+        if (n >= Cluster.PARALLEL_THRESHOLD)
+            kMeans = new ParallelKMeans(k, PARTITION_ITERATIONS, random, ForkJoinPool.commonPool(),
+                    this);
+        else
+            kMeans = new KMeans(k, PARTITION_ITERATIONS, random);
+        int[] assignment = kMeans.cluster(xs, ys);
+        int[][] members = groupByPartition(assignment, k);
+        int[][] tours = routeAll(xs, ys, members);
+        int[] partitionOrder = orderPartitions(kMeans.getCenterXs(), kMeans.getCenterYs());
+
+        //   Each partition tour is a closed loop. It is entered at the city closest to where the previous
+        // partition was left and opened on whichever side of that city ends nearer the next centre.
+
+        int[] order = new int[n];
+        int size = 0;
+        int[] seams = new int[2 * k];
+        int seamCount = 0;
+        int exit = -1;
+        for (int p = 0; p < k; p++) {
+            int[] tour = tours[partitionOrder[p]];
+            int m = tour.length;
+            if (m == 0)
+                continue;
+            int entry = 0;
+            if (exit != -1) {
+                long best = Long.MAX_VALUE;
+                for (int i = 0; i < m; i++) {
+                    long distance = squaredDistance(xs, ys, exit, tour[i]);
+                    if (distance < best) {
+                        best = distance;
+                        entry = i;
+                    }
+                }
+            }
+            int following = partitionOrder[(p + 1) % k];
+            double nextX = kMeans.getCenterXs()[following];
+            double nextY = kMeans.getCenterYs()[following];
+            int forwardEnd = tour[(entry + m - 1) % m];
+            int backwardEnd = tour[(entry + 1) % m];
+            int step = squaredDistance(xs[forwardEnd], ys[forwardEnd], nextX, nextY)
+                    <= squaredDistance(xs[backwardEnd], ys[backwardEnd], nextX, nextY) ? 1 : m - 1;
+            for (int i = 0, j = entry; i < m; i++, j = (j + step) % m)
+                order[size++] = tour[j];
+            seams[seamCount++] = order[size - m];
+            seams[seamCount++] = order[size - 1];
+            exit = order[size - 1];
+        }
+        int[] damaged = new int[seamCount];
+        System.arraycopy(seams, 0, damaged, 0, seamCount);
+        return new LocalSearch(xs, ys, LocalSearch.DEFAULT_NEIGHBOURS).repair(order, damaged);
+    }
+
+
+    private static int[][] groupByPartition(int[] assignment, int k) {
+        int[] counts = new int[k];
+        for (int p : assignment)
+            counts[p]++;
+        int[][] members = new int[k][];
+        for (int p = 0; p < k; p++)
+            members[p] = new int[counts[p]];
+        int[] fill = new int[k];
+        for (int i = 0; i < assignment.length; i++) {
+            int p = assignment[i];
+            members[p][fill[p]++] = i;
+        }
+        return members;
+    }
+
+
+    //   Routes every partition on the shared pool. Interrupting the calling thread cancels the
+    // strategy, so partitions not yet started are skipped, and rethrows the interrupt. The pool is not
+    // shut down, so a partition already being routed still finishes.
+
+    private int[][] routeAll(int[] xs, int[] ys, int[][] members) throws InterruptedException {
+        int[][] tours = new int[members.length][];
+        List<RouteTask> tasks = new ArrayList<RouteTask>();
+        for (int p = 0; p < members.length; p++)
+            tasks.add(new RouteTask(xs, ys, members[p], tours, p));
+        ForkJoinTask<Void> root = POOL.submit(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        try {
+            root.get();
+            if (isCancelled())
+                throw new InterruptedException();
+        } catch (InterruptedException e) {
+            cancel();
+            root.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        return tours;
+    }
+
+
+    private class RouteTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] xs, ys;
+        private final int[] cities;
+        private final int[][] tours;
+        private final int partition;
+
+        RouteTask(int[] xs, int[] ys, int[] cities, int[][] tours, int partition) {
+            this.xs = xs;
+            this.ys = ys;
+            this.cities = cities;
+            this.tours = tours;
+            this.partition = partition;
+        }
+
+        //   ForkJoinTask has an isCancelled() of its own, for the task rather than the strategy.
+
+        private boolean stopped() {
+            return PartitionedTSP.this.isCancelled();
+        }
+
+        @Override
+        protected void compute() {
+            if (stopped())
+                return;
+            int m = cities.length;
+            int[] subXs = new int[m];
+            int[] subYs = new int[m];
+            for (int i = 0; i < m; i++) {
+                subXs[i] = xs[cities[i]];
+                subYs[i] = ys[cities[i]];
+            }
+            int[] order;
+            try {
+                order = route(subXs, subYs);
+            } catch (InterruptedException e) {
+                PartitionedTSP.this.cancel();
+                return;
+            }
+            for (int i = 0; i < m; i++)
+                order[i] = cities[order[i]];
+            tours[partition] = order;
+        }
+    }
+
+
+    private static int[] route(int[] xs, int[] ys) throws InterruptedException {
+        int[] order = new GreedyTSP().nearestNeighbourTour(xs, ys);
+        return new LocalSearch(xs, ys, LocalSearch.DEFAULT_NEIGHBOURS).improve(order);
+    }
+
+
+    //   The partitions are visited in the order of a short tour over their centres, so consecutive
+    // partitions are neighbours on the map.
+
+    private static int[] orderPartitions(double[] centerXs, double[] centerYs) throws InterruptedException {
+        int k = centerXs.length;
+        int[] xs = new int[k];
+        int[] ys = new int[k];
+        for (int p = 0; p < k; p++) {
+            xs[p] = (int) Math.round(centerXs[p]);
+            ys[p] = (int) Math.round(centerYs[p]);
+        }
+        return route(xs, ys);
+    }
+
+
+    private static long squaredDistance(int[] xs, int[] ys, int a, int b) {
+        long dx = xs[a] - (long) xs[b];
+        long dy = ys[a] - (long) ys[b];
+        return dx * dx + dy * dy;
+    }
+
+
+    private static double squaredDistance(double x1, double y1, double x2, double y2) {
+        double dx = x1 - x2;
+        double dy = y1 - y2;
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * Run the partitioned TSP algorithm to find a short path on a large map.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    @Override
+    public void createPath(CityDatabase cityDB) throws InterruptedException {
+        CitySnapshot snapshot = getSnapshot(cityDB);
+        Tour path = runPartitioned(snapshot.cities);
+        applyResult(cityDB, snapshot, path);
+    }
+}
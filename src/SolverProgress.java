@@ -0,0 +1,81 @@
+/**
+ * Snapshot of a running strategy, sent to the observers of the strategy every time it publishes a
+ * better tour and once more when it finishes.
+ */
+public class SolverProgress {
+
+    final String strategy;
+    final double length;
+    final long elapsed;
+    final double lowerBound;
+    final boolean finished;
+
+
+    /**
+     * Instantiates a progress snapshot.
+     * @param strategy Name of the strategy
+     * @param length Length of the best tour so far
+     * @param elapsed Time since the strategy started, in milliseconds
+     * @param lowerBound Proven lower bound on the optimal length, or NaN if none is known
+     * @param finished true if the strategy has finished
+     */
+    public SolverProgress(String strategy, double length, long elapsed, double lowerBound, boolean finished) {
+        this.strategy = strategy;
+        this.length = length;
+        this.elapsed = elapsed;
+        this.lowerBound = lowerBound;
+        this.finished = finished;
+    }
+
+    /**
+     * @return Length of the best tour so far
+     */
+    public double getLength() {
+        return length;
+    }
+
+    /**
+     * @return Time since the strategy started, in milliseconds
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return Proven lower bound on the optimal length, or NaN if none is known
+     */
+    public double getLowerBound() {
+        return lowerBound;
+    }
+
+    /**
+     * @return true if the strategy has finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return Relative gap between the tour and the lower bound, or NaN if no bound is known
+     */
+    public double getGap() {
+        if (Double.isNaN(lowerBound) || lowerBound <= 0)
+            return Double.NaN;
+        return Math.max(0, (length - lowerBound) / lowerBound);
+    }
+
+
+    /**
+     * @return Status line describing the progress
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(strategy);
+        text.append(finished ? " finished: " : " running: ");
+        text.append(String.format("length %.1f after %d ms", length, elapsed));
+        double gap = getGap();
+        if (!Double.isNaN(gap))
+            text.append(String.format(", bound %.1f (gap %.2f%%)", lowerBound, gap * 100));
+        return text.toString();
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Runs path strategies on a single background thread. Requests that arrive in a burst, such as one
+ * per mouse event while a city is dragged, are coalesced: only the latest strategy is kept, and it
+ * starts once no new request has arrived for the quiet period. A new request also interrupts the
+ * strategy that is running and cancels it, so stale work is abandoned as soon as the strategy next
+ * checks for interrupts, and its worker threads stop publishing at once. Since there is only one
+ * thread, two strategies never update the CityDatabase at once.
+ */
+public class SolverScheduler {
+
+    /**
+     * Time without new requests before the latest one is started, in milliseconds.
+     */
+    public static final long DEFAULT_QUIET_PERIOD = 20;
+
+    private final ScheduledExecutorService executor;
+    private final long quietPeriod;
+    private Strategy pending;
+    private long lastRequest;
+    private boolean timerSet;
+    private Thread worker;
+    private Strategy current;
+    private long submitted;
+    private long started;
+
+
+    /**
+     * Instantiates the scheduler with the default quiet period.
+     */
+    public SolverScheduler() {
+        this(DEFAULT_QUIET_PERIOD);
+    }
+
+    /**
+     * Instantiates the scheduler.
+     * @param quietPeriod Time without new requests before the latest one is started, in milliseconds
+     */
+    public SolverScheduler(long quietPeriod) {
+        this.quietPeriod = quietPeriod;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Solver");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    /**
+     * Ask for a strategy to be run, replacing any strategy still waiting and interrupting the one
+     * that is running.
+     * @param strategy Strategy to run
+     */
+    public synchronized void submit(Strategy strategy) {
+        pending = strategy;
+        lastRequest = System.nanoTime();
+        submitted++;
+        stopCurrent();
+        if (!timerSet) {
+            timerSet = true;
+            executor.schedule(dispatch, quietPeriod, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Drop the strategy waiting to run, if any, and interrupt the one that is running.
+     */
+    public synchronized void cancel() {
+        pending = null;
+        stopCurrent();
+    }
+
+    /**
+     * Run a strategy as soon as the one running now returns, unless that one has been cancelled or a
+     * newer request is waiting. Lets a running strategy hand its slot to another without
+     * interrupting itself.
+     * @param from Strategy that is running and hands over
+     * @param strategy Strategy to run next
+     */
+    public synchronized void handOver(Strategy from, Strategy strategy) {
+        if (current != from || pending != null || from.isCancelled())
+            return;
+        pending = strategy;
+        submitted++;
+        if (!timerSet) {
+            timerSet = true;
+            executor.schedule(dispatch, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopCurrent() {
+        if (current != null)
+            current.cancel();
+        if (worker != null)
+            worker.interrupt();
+    }
+
+    /**
+     * @return Number of strategies submitted so far
+     */
+    public synchronized long getSubmitted() {
+        return submitted;
+    }
+
+    /**
+     * @return Number of strategies actually started so far; the rest were coalesced away
+     */
+    public synchronized long getStarted() {
+        return started;
+    }
+
+
+    //   Runs on the solver thread when the quiet period may have passed. If a request arrived in the
+    // meantime the timer is set again for the rest of the period, otherwise the latest strategy runs.
+
+    private final Runnable dispatch = new Runnable() {
+        @Override
+        public void run() {
+            Strategy next;
+            synchronized (SolverScheduler.this) {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastRequest);
+                if (pending != null && waited < quietPeriod) {
+                    executor.schedule(this, quietPeriod - waited, TimeUnit.MILLISECONDS);
+                    return;
+                }
+                timerSet = false;
+                next = pending;
+                pending = null;
+                if (next == null)
+                    return;
+                started++;
+                worker = Thread.currentThread();
+                current = next;
+            }
+            try {
+                next.run();
+            } finally {
+                synchronized (SolverScheduler.this) {
+                    worker = null;
+                    current = null;
+                }
+                Thread.interrupted();
+            }
+        }
+    };
+}
@@ -0,0 +1,257 @@
+/**
+ * Uniform grid over city coordinates that answers nearest neighbour queries by searching outwards
+ * ring by ring from the cell of the query point, and radius queries by scanning only the cells the
+ * radius overlaps, instead of scanning every city. Cities that move after the grid is built are
+ * taken out of their cells and checked by every query instead, so a few moves cost a few extra
+ * distance checks per query rather than a rebuild.
+ */
+public class SpatialGrid {
+
+    /**
+     * Average number of cities per cell the grid is sized for.
+     */
+    private static final int CITIES_PER_CELL = 2;
+
+    final int[] xs;
+    final int[] ys;
+    private final int count;
+    private final int minX, minY;
+    private final int cellSize;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] cellCities;
+    private boolean[] isMoved;
+    private int[] moved;
+    private int movedCount;
+
+
+    /**
+     * Builds a grid over the first count coordinates.
+     * @param xs X location of every city
+     * @param ys Y location of every city
+     * @param count Number of cities to index
+     */
+    public SpatialGrid(int[] xs, int[] ys, int count) {
+        this.xs = xs;
+        this.ys = ys;
+        this.count = count;
+        int loX = Integer.MAX_VALUE, loY = Integer.MAX_VALUE;
+        int hiX = Integer.MIN_VALUE, hiY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            loX = Math.min(loX, xs[i]);
+            loY = Math.min(loY, ys[i]);
+            hiX = Math.max(hiX, xs[i]);
+            hiY = Math.max(hiY, ys[i]);
+        }
+        if (count == 0) {
+            loX = loY = hiX = hiY = 0;
+        }
+        minX = loX;
+        minY = loY;
+        long width = (long) hiX - loX + 1;
+        long height = (long) hiY - loY + 1;
+        double area = (double) width * height;
+        int size = (int) Math.ceil(Math.sqrt(area * CITIES_PER_CELL / Math.max(count, 1)));
+        cellSize = Math.max(size, 1);
+        columns = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        //   Counting sort of the cities by cell, so each cell is a contiguous run of cellCities.
+
+        cellStart = new int[columns * rows + 1];
+        for (int i = 0; i < count; i++)
+            cellStart[cellOf(xs[i], ys[i]) + 1]++;
+        for (int c = 0; c < columns * rows; c++)
+            cellStart[c + 1] += cellStart[c];
+        cellCities = new int[count];
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < count; i++) {
+            int cell = cellOf(xs[i], ys[i]);
+            cellCities[cellStart[cell] + fill[cell]++] = i;
+        }
+    }
+
+
+    /**
+     * Record that the location of a city in xs and ys changed since the grid was built.
+     * @param city Index of the city that moved
+     */
+    public void moved(int city) {
+        if (isMoved == null) {
+            isMoved = new boolean[count];
+            moved = new int[4];
+        }
+        if (isMoved[city])
+            return;
+        isMoved[city] = true;
+        if (movedCount == moved.length) {
+            int[] grown = new int[movedCount * 2];
+            System.arraycopy(moved, 0, grown, 0, movedCount);
+            moved = grown;
+        }
+        moved[movedCount++] = city;
+    }
+
+
+    private boolean inCell(int city) {
+        return isMoved == null || !isMoved[city];
+    }
+
+
+    private int column(int x) {
+        return Math.min(Math.max((int) (((long) x - minX) / cellSize), 0), columns - 1);
+    }
+
+
+    private int row(int y) {
+        return Math.min(Math.max((int) (((long) y - minY) / cellSize), 0), rows - 1);
+    }
+
+
+    private int cellOf(int x, int y) {
+        return row(y) * columns + column(x);
+    }
+
+
+    private long squaredDistance(int city, int x, int y) {
+        long dx = xs[city] - (long) x;
+        long dy = ys[city] - (long) y;
+        return dx * dx + dy * dy;
+    }
+
+
+    /**
+     * Find the k cities closest to the given city, nearest first.
+     * @param city Index of the query city, which is never part of the result
+     * @param k Number of neighbours wanted
+     * @return Indices of up to k nearest cities
+     */
+    public int[] nearest(int city, int k) {
+        k = Math.min(k, count - 1);
+        if (k <= 0)
+            return new int[0];
+        int x = xs[city];
+        int y = ys[city];
+        int[] found = new int[k];
+        long[] foundDistance = new long[k];
+        int size = 0;
+        for (int i = 0; i < movedCount; i++) {
+            if (moved[i] != city)
+                size = offer(moved[i], squaredDistance(moved[i], x, y), found, foundDistance, size);
+        }
+        int centerColumn = column(x);
+        int centerRow = row(y);
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+
+            //   Every city outside the rings searched so far is at least (ring - 1) cells away, so
+            // once the k-th best is closer than that the answer cannot change.
+
+            if (size == k) {
+                long reach = (long) (ring - 1) * cellSize;
+                if (reach > 0 && reach * reach > foundDistance[k - 1])
+                    break;
+            }
+            for (int r = centerRow - ring; r <= centerRow + ring; r++) {
+                if (r < 0 || r >= rows)
+                    continue;
+                boolean edgeRow = r == centerRow - ring || r == centerRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = centerColumn - ring; c <= centerColumn + ring; c += Math.max(step, 1)) {
+                    if (c < 0 || c >= columns)
+                        continue;
+                    int cell = r * columns + c;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int other = cellCities[i];
+                        if (other != city && inCell(other))
+                            size = offer(other, squaredDistance(other, x, y), found, foundDistance, size);
+                    }
+                }
+            }
+        }
+        if (size < k) {
+            int[] result = new int[size];
+            System.arraycopy(found, 0, result, 0, size);
+            return result;
+        }
+        return found;
+    }
+
+
+    //   Insertion step of nearest(): keeps the found cities sorted by distance and at most
+    // found.length long.
+
+    private static int offer(int other, long distance, int[] found, long[] foundDistance, int size) {
+        int k = found.length;
+        if (size == k && distance >= foundDistance[k - 1])
+            return size;
+        int j = size < k ? size++ : k - 1;
+        while (j > 0 && foundDistance[j - 1] > distance) {
+            found[j] = found[j - 1];
+            foundDistance[j] = foundDistance[j - 1];
+            j--;
+        }
+        found[j] = other;
+        foundDistance[j] = distance;
+        return size;
+    }
+
+
+    /**
+     * Find every city within a radius of the given city, in no particular order.
+     * @param city Index of the query city, which is never part of the result
+     * @param radius Largest distance from the query city, inclusive
+     * @return Indices of the cities within the radius
+     */
+    public int[] within(int city, double radius) {
+        int x = xs[city];
+        int y = ys[city];
+        long reach = (long) Math.ceil(radius);
+
+        //   Squared distances between integer locations are whole numbers, so rounding down the squared
+        // radius is exact, and the small slack keeps a radius computed with sqrt() inclusive.
+
+        long limit = (long) Math.floor(radius * radius + 1e-6);
+        int firstColumn = column(clamp(x - reach));
+        int lastColumn = column(clamp(x + reach));
+        int firstRow = row(clamp(y - reach));
+        int lastRow = row(clamp(y + reach));
+        int[] found = new int[16];
+        int size = 0;
+        for (int i = 0; i < movedCount; i++) {
+            int other = moved[i];
+            if (other != city && squaredDistance(other, x, y) <= limit)
+                found = append(found, size++, other);
+        }
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int other = cellCities[i];
+                    if (other == city || !inCell(other) || squaredDistance(other, x, y) > limit)
+                        continue;
+                    found = append(found, size++, other);
+                }
+            }
+        }
+        int[] result = new int[size];
+        System.arraycopy(found, 0, result, 0, size);
+        return result;
+    }
+
+
+    private static int[] append(int[] found, int size, int city) {
+        if (size == found.length) {
+            int[] grown = new int[size * 2];
+            System.arraycopy(found, 0, grown, 0, size);
+            found = grown;
+        }
+        found[size] = city;
+        return found;
+    }
+
+
+    private static int clamp(long value) {
+        return (int) Math.max(Math.min(value, Integer.MAX_VALUE), Integer.MIN_VALUE);
+    }
+}
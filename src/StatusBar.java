@@ -1,5 +1,6 @@
 
 import javax.swing.JLabel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.BevelBorder;
 
 
@@ -8,7 +9,7 @@ import javax.swing.border.BevelBorder;
  * user.
  * @author Nate Robinson
  */
-public class StatusBar extends JLabel {
+public class StatusBar extends JLabel implements IObserver {
     
     private static StatusBar instance;
     
@@ -37,5 +38,23 @@ public class StatusBar extends JLabel {
     public void setStatus(String message) {
         setText("" + message);
     }
+
+    /**
+     * Show the progress of a running strategy. Strategies report from their own thread, so the text
+     * is changed on the event dispatch thread.
+     * @param data SolverProgress to display, anything else is ignored
+     */
+    @Override
+    public void update(Object data) {
+        if (!(data instanceof SolverProgress))
+            return;
+        final String message = data.toString();
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                setStatus(message);
+            }
+        });
+    }
     
 }
@@ -1,8 +1,31 @@
 /**
- * Class that represents the strategy pattern that Cluster, PathGenerator, and BruteForcePath use.
+ * Class that represents the strategy pattern that Cluster, PathGenerator, and HeldKarpPath use.
+ * Strategies that improve a tour over time can publish each better tour while they run; published
+ * tours go straight to the CityDatabase and a SolverProgress is sent to the observers of the strategy.
+ * Publishing is rate limited: an improvement that arrives too soon after the last published one is
+ * held back as the pending best, replaced by any later one, and applied when the run ends or is
+ * cancelled unless the final tour of createPath takes its place. A strategy that is cancelled stops
+ * publishing straight away, whichever thread its improvements come from.
+ * Strategies work from the CitySnapshot returned by getSnapshot() and apply their tours against its
+ * version, so a tour computed for cities that have since changed is dropped instead of drawn.
  * @author Dustin Howarth
  */
-public abstract class Strategy implements Runnable {
+public abstract class Strategy extends Observable implements Runnable {
+
+    /**
+     * Shortest time between two published tours, in milliseconds.
+     */
+    public static final long PUBLISH_INTERVAL = 100;
+
+    private volatile boolean running = false;
+    private long startTime;
+    private long lastPublish;
+    private double lowerBound = Double.NaN;
+    private volatile CitySnapshot snapshot;
+    private double resultLength = Double.NaN;
+    private volatile boolean cancelled = false;
+    private int[] pendingOrder;
+    private double pendingLength;
 
     public abstract void createPath(CityDatabase cityDB) throws InterruptedException;
 
@@ -12,10 +35,132 @@ public abstract class Strategy implements Runnable {
     @Override
     public void run() {
         CityDatabase cityDB = CityDatabase.getInstance();
+        startTime = System.nanoTime();
+        lastPublish = startTime - PUBLISH_INTERVAL * 1_000_000L;
+        resultLength = Double.NaN;
+        synchronized (this) {
+            snapshot = cityDB.getSnapshot();
+            running = true;
+        }
         try {
             createPath(cityDB);
         } catch (InterruptedException e) {
+            // the pending best is still applied below if the cities have not changed
+        } finally {
+            // workers may still be publishing, and publish() reads the snapshot under this lock
+            synchronized (this) {
+                flushPending(cityDB);
+                running = false;
+                snapshot = null;
+            }
+        }
+        if (!Double.isNaN(resultLength))
+            sendNotifications(new SolverProgress(getClass().getSimpleName(), resultLength, elapsed(), lowerBound, true));
+    }
+
+
+    /**
+     * Stop publishing tours. Called by the scheduler when the strategy is superseded or cancelled,
+     * alongside interrupting the thread that runs it; worker threads of the strategy see this even
+     * though only the running thread is interrupted.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * @return true if cancel() has been called
+     */
+    protected boolean isCancelled() {
+        return cancelled;
+    }
+
+
+    /**
+     * Get the cities to work on. Inside run() this is the snapshot taken when the run started.
+     * @param cityDB The CityDatabase singleton object
+     * @return Snapshot of the cities
+     */
+    protected synchronized CitySnapshot getSnapshot(CityDatabase cityDB) {
+        if (snapshot == null)
+            snapshot = cityDB.getSnapshot();
+        return snapshot;
+    }
+
+    /**
+     * Apply a finished tour, unless the cities changed since the snapshot it was computed from.
+     * @param cityDB The CityDatabase singleton object that will be updated
+     * @param computedFrom Snapshot the tour was computed from
+     * @param path Paths between cities, or null if there is no result
+     */
+    protected void applyResult(CityDatabase cityDB, CitySnapshot computedFrom, Tour path) {
+        if (path == null)
             return;
+        synchronized (this) {
+            pendingOrder = null;
         }
+        // measured first, since the database owns the tour once it is applied
+        double length = path.length(computedFrom.table);
+        if (cityDB.addConnections(path, computedFrom.version))
+            resultLength = length;
+    }
+
+
+    /**
+     * @return true if a tour published now would not be skipped
+     */
+    protected synchronized boolean isPublishDue() {
+        return running && System.nanoTime() - lastPublish >= PUBLISH_INTERVAL * 1_000_000L;
+    }
+
+    /**
+     * Publish a better tour found while the strategy runs. Does nothing outside run(). When the
+     * strategy has been cancelled, or the last tour was published less than PUBLISH_INTERVAL ago, the
+     * tour is kept as the pending best instead. The array is kept, not copied, so it must still hold
+     * this tour or a later published one when the run ends.
+     * @param order Visiting order of every city index
+     * @param length Length of the tour
+     * @param bound Proven lower bound on the optimal length, or NaN if none is known
+     */
+    protected synchronized void publish(int[] order, double length, double bound) {
+        setLowerBound(bound);
+        if (!running)
+            return;
+        if (!isPublishDue() || cancelled) {
+            pendingOrder = order;
+            pendingLength = length;
+            return;
+        }
+        pendingOrder = null;
+        lastPublish = System.nanoTime();
+        if (!CityDatabase.getInstance().addConnections(Tour.fromOrder(order), snapshot.version))
+            return;
+        sendNotifications(new SolverProgress(getClass().getSimpleName(), length, elapsed(), lowerBound, false));
+    }
+
+
+    //   Applies the improvement publish() held back last, unless the cities changed since the
+    // snapshot; the final progress then reports it.
+
+    private synchronized void flushPending(CityDatabase cityDB) {
+        int[] order = pendingOrder;
+        pendingOrder = null;
+        if (order != null && cityDB.addConnections(Tour.fromOrder(order), snapshot.version))
+            resultLength = pendingLength;
+    }
+
+
+    /**
+     * Record a proven lower bound on the optimal length, reported with every later progress.
+     * @param bound Lower bound, or NaN to keep the current one
+     */
+    protected synchronized void setLowerBound(double bound) {
+        if (!Double.isNaN(bound))
+            lowerBound = bound;
+    }
+
+
+    private long elapsed() {
+        return (System.nanoTime() - startTime) / 1_000_000L;
     }
 }
@@ -0,0 +1,218 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads a TSPLIB file one line at a time and adds its cities to the database in one bulk insert.
+ * Besides the standard header and NODE_COORD_SECTION, the map files this program saves carry an
+ * EOFCoordinates marker followed by one line per connection, "x1 y1 x2 y2", up to an EOFLines
+ * marker. Every line is split into fields in place, so no line is copied more than once and loading
+ * stays linear in the size of the file.
+ */
+public class TSPLoader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 4;
+    // default city size, spelled out so City does not fall back to it through a parse failure
+    static final String SIZE = "16";
+
+    final CityDatabase cityDB;
+    final Color color = new Color(1);
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    int cityCount;
+    int connectionCount;
+    String type;
+    int dimension;
+
+
+    /**
+     * Instantiates a loader that adds to the given database.
+     * @param cityDB The CityDatabase singleton object that will be updated.
+     */
+    public TSPLoader(CityDatabase cityDB) {
+        this.cityDB = cityDB;
+    }
+
+
+    /**
+     * Load a UTF-8 encoded file.
+     * @param file File to read
+     */
+    public void load(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            load(reader);
+        }
+    }
+
+    /**
+     * Load from a reader, which is left open.
+     * @param source Text of a TSPLIB file
+     */
+    public void load(Reader source) throws IOException {
+        BufferedReader reader = new BufferedReader(source, BUFFER_SIZE);
+        readHeader(reader);
+        City[] cities = new City[Math.max(dimension, 16)];
+        cityCount = 0;
+        connectionCount = 0;
+        String line;
+        String marker = null;
+        while ((line = reader.readLine()) != null) {
+            int count = split(line);
+            if (count == 0)
+                continue;
+            if (!isNumber(line, starts[0])) {
+                marker = line.substring(starts[0], ends[0]);
+                break;
+            }
+            if (count < 3)
+                throw new IOException("Malformed node line: " + line);
+            int x = (int) parseDouble(line, 1);
+            int y = (int) parseDouble(line, 2);
+            String name = count > 3 ? line.substring(starts[3], ends[3]) : "";
+            if (cityCount == cities.length)
+                cities = Arrays.copyOf(cities, cityCount * 2);
+            cities[cityCount++] = new BaseCity(x, y, name, color, SIZE);
+        }
+        cityDB.addCities(Arrays.copyOf(cities, cityCount));
+        if ("EOFCoordinates".equals(marker))
+            readConnections(reader);
+    }
+
+    /**
+     * @return Number of cities added by the last load
+     */
+    public int getCityCount() {
+        return cityCount;
+    }
+
+    /**
+     * @return Number of connections added by the last load
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+
+    //   Header lines are "KEY : value" up to NODE_COORD_SECTION. Only TYPE is checked; DIMENSION is
+    // used to size the city array up front.
+
+    private void readHeader(BufferedReader reader) throws IOException {
+        type = null;
+        dimension = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (headerLine(line))
+                return;
+        }
+        throw new IOException("No NODE_COORD_SECTION");
+    }
+
+
+    /**
+     * Take in one header line.
+     * @param line Header line without its line break
+     * @return true if the line starts the node section
+     */
+    boolean headerLine(String line) throws IOException {
+        String trimmed = line.trim();
+        if (trimmed.startsWith("NODE_COORD_SECTION")) {
+            if (type == null || !type.equalsIgnoreCase("TSP"))
+                throw new IOException("Not a TSP file, TYPE is " + type);
+            return true;
+        }
+        int colon = trimmed.indexOf(':');
+        if (colon == -1)
+            return false;
+        String key = trimmed.substring(0, colon).trim();
+        String value = trimmed.substring(colon + 1).trim();
+        if (key.equals("TYPE")) {
+            type = value;
+        } else if (key.equals("DIMENSION")) {
+            try {
+                dimension = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed DIMENSION: " + value);
+            }
+        }
+        return false;
+    }
+
+
+    //   Connections name their end points by location, so each one is resolved with a hit test. The
+    // whole set goes to the database as one Tour.
+
+    private void readConnections(BufferedReader reader) throws IOException {
+        Tour connections = new Tour(cityDB.cities.size());
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int count = split(line);
+            if (count == 0)
+                continue;
+            if (!isNumber(line, starts[0]))
+                break;
+            if (count < 4)
+                throw new IOException("Malformed connection line: " + line);
+            City one = cityDB.findCityAt(parseInt(line, 0), parseInt(line, 1));
+            City two = cityDB.findCityAt(parseInt(line, 2), parseInt(line, 3));
+            if (one != null && two != null) {
+                connections.connect(one.index, two.index);
+                connectionCount++;
+            }
+        }
+        cityDB.addConnections(connections);
+    }
+
+
+    /**
+     * Find the start and end of up to MAX_FIELDS whitespace separated fields.
+     * @return Number of fields found
+     */
+    private int split(String line) {
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (count < MAX_FIELDS) {
+            while (i < length && line.charAt(i) <= ' ')
+                i++;
+            if (i == length)
+                break;
+            starts[count] = i;
+            while (i < length && line.charAt(i) > ' ')
+                i++;
+            ends[count++] = i;
+        }
+        return count;
+    }
+
+
+    private static boolean isNumber(String line, int start) {
+        char c = line.charAt(start);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+
+
+    private double parseDouble(String line, int field) throws IOException {
+        try {
+            return Double.parseDouble(line.substring(starts[field], ends[field]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed number in line: " + line);
+        }
+    }
+
+
+    private int parseInt(String line, int field) throws IOException {
+        try {
+            return Integer.parseInt(line.substring(starts[field], ends[field]));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed number in line: " + line);
+        }
+    }
+}
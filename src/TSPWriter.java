@@ -0,0 +1,220 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Writes maps as text, either in the format this program saves and loads, with connections between
+ * the EOFCoordinates and EOFLines markers, or as a standard TSPLIB file with a TOUR_SECTION. Every
+ * line is put together in one reusable char buffer, with numbers formatted by hand, so writing a line
+ * allocates nothing. The cities come from a CitySnapshot, which does not change while it is written,
+ * so a writer can run on a background thread while the map is edited.
+ */
+public class TSPWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // longest int, "-2147483648", and a separator
+    private static final int MAX_INT_LENGTH = 12;
+
+    private final Writer out;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int length = 0;
+
+
+    /**
+     * Instantiates a writer.
+     * @param out Destination for the text, written to in large blocks
+     */
+    public TSPWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Instantiates a writer to a UTF-8 encoded file.
+     * @param file File to write, replaced if it exists
+     * @return Writer to the file
+     */
+    public static TSPWriter open(File file) throws IOException {
+        return new TSPWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+
+    /**
+     * Write a map in the format this program loads: header, nodes with their names, and every
+     * connection as the locations of its two end points.
+     * @param snapshot Cities to write
+     * @param paths Connections to write
+     */
+    public void writeMap(CitySnapshot snapshot, Tour paths) throws IOException {
+        int n = snapshot.cities.size();
+        append("TYPE : TSP\n");
+        append("DIMENSION : ");
+        appendInt(n);
+        append("\n");
+        writeNodes(snapshot, true);
+        append("EOFCoordinates\n");
+        int[] xs = snapshot.table.xs;
+        int[] ys = snapshot.table.ys;
+        for (int i = 0; i < n; i++) {
+            int other = paths.next(i);
+            if (other < 0 || other >= n)
+                continue;
+            appendInt(xs[i]);
+            append(' ');
+            appendInt(ys[i]);
+            append(' ');
+            appendInt(xs[other]);
+            append(' ');
+            appendInt(ys[other]);
+            append(" \n");
+        }
+        append("EOFLines\n");
+        flush();
+    }
+
+    /**
+     * Write a standard TSPLIB file: header, NODE_COORD_SECTION and a TOUR_SECTION holding the
+     * connections as tours of 1-based node numbers, each ending in -1.
+     * @param name Value of the NAME header
+     * @param snapshot Cities to write
+     * @param paths Connections to write
+     */
+    public void writeTSPLIB(String name, CitySnapshot snapshot, Tour paths) throws IOException {
+        int n = snapshot.cities.size();
+        append("NAME : ");
+        append(name);
+        append("\nTYPE : TSP\nDIMENSION : ");
+        appendInt(n);
+        append("\nEDGE_WEIGHT_TYPE : EUC_2D\n");
+        writeNodes(snapshot, false);
+        writeTours(paths, n);
+        append("EOF\n");
+        flush();
+    }
+
+
+    private void writeNodes(CitySnapshot snapshot, boolean names) throws IOException {
+        append("NODE_COORD_SECTION\n");
+        int[] xs = snapshot.table.xs;
+        int[] ys = snapshot.table.ys;
+        for (int i = 0; i < xs.length; i++) {
+            appendInt(i + 1);
+            append(' ');
+            appendInt(xs[i]);
+            append(' ');
+            appendInt(ys[i]);
+            if (names) {
+                append(' ');
+                append(snapshot.cities.get(i).name);
+            }
+            append('\n');
+        }
+    }
+
+
+    //   Open chains are written from their first city, then what is left are closed loops, written
+    // from their lowest city. A TSPLIB tour always returns to its start, so readers close the chains.
+    // First cities are found from the connections leaving every city rather than from previous(),
+    // which keeps only one of the cities connected to a city.
+
+    private void writeTours(Tour paths, int n) throws IOException {
+        append("TOUR_SECTION\n");
+        boolean[] entered = new boolean[n];
+        for (int city = 0; city < n; city++) {
+            int next = paths.next(city);
+            if (next >= 0 && next < n)
+                entered[next] = true;
+        }
+        boolean[] written = new boolean[n];
+        for (int pass = 0; pass < 2; pass++) {
+            for (int start = 0; start < n; start++) {
+                int next = paths.next(start);
+                if (written[start] || next < 0 || next >= n)
+                    continue;
+                if (pass == 0 && entered[start])
+                    continue;
+                int city = start;
+                while (city >= 0 && city < n && !written[city]) {
+                    written[city] = true;
+                    appendInt(city + 1);
+                    append('\n');
+                    city = paths.next(city);
+                }
+                append("-1\n");
+            }
+        }
+        append("-1\n");
+    }
+
+
+    /**
+     * Write out everything buffered and close the destination.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+
+    private void flush() throws IOException {
+        out.write(buffer, 0, length);
+        length = 0;
+        out.flush();
+    }
+
+
+    private void reserve(int count) throws IOException {
+        if (length + count > buffer.length) {
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+
+
+    private void append(char c) throws IOException {
+        reserve(1);
+        buffer[length++] = c;
+    }
+
+
+    private void append(String text) throws IOException {
+        int done = 0;
+        while (done < text.length()) {
+            if (length == buffer.length) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            int count = Math.min(buffer.length - length, text.length() - done);
+            text.getChars(done, done + count, buffer, length);
+            length += count;
+            done += count;
+        }
+    }
+
+
+    //   Digits come out lowest first, so they are written in place and then reversed.
+
+    private void appendInt(int value) throws IOException {
+        reserve(MAX_INT_LENGTH);
+        long remaining = value;
+        if (remaining < 0) {
+            buffer[length++] = '-';
+            remaining = -remaining;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+    }
+}
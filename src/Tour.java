@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+
+/**
+ * Set of directed connections between cities, addressed by city index. Each city has at most one
+ * outgoing connection, like a Map from city to city, but stored as a successor array plus a
+ * predecessor array so a closed tour can be walked in order and either neighbour found in O(1).
+ */
+public class Tour {
+
+    private int[] next;
+    private int[] previous;
+    private int edgeCount;
+
+
+    /**
+     * Creates an empty set of connections.
+     * @param capacity Number of cities the connections can refer to before growing
+     */
+    public Tour(int capacity) {
+        next = new int[capacity];
+        previous = new int[capacity];
+        Arrays.fill(next, -1);
+        Arrays.fill(previous, -1);
+    }
+
+    /**
+     * Creates the closed tour that visits the cities in the given order and returns to the first.
+     * @param order Visiting order of city indices
+     * @return Tour over the given cities
+     */
+    public static Tour fromOrder(int[] order) {
+        int capacity = 0;
+        for (int city : order)
+            capacity = Math.max(capacity, city + 1);
+        Tour tour = new Tour(capacity);
+        if (order.length < 2)
+            return tour;
+        for (int i = 0; i < order.length; i++)
+            tour.connect(order[i], order[i + 1 == order.length ? 0 : i + 1]);
+        return tour;
+    }
+
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= next.length)
+            return;
+        int old = next.length;
+        int grown = Math.max(capacity, old + (old >> 1));
+        next = Arrays.copyOf(next, grown);
+        previous = Arrays.copyOf(previous, grown);
+        Arrays.fill(next, old, grown, -1);
+        Arrays.fill(previous, old, grown, -1);
+    }
+
+
+    /**
+     * Connect one city to another, replacing any connection that already leaves the first city.
+     * @param from Index of the city the connection leaves
+     * @param to Index of the city the connection enters
+     */
+    public void connect(int from, int to) {
+        ensureCapacity(Math.max(from, to) + 1);
+        int old = next[from];
+        if (old == -1) {
+            edgeCount++;
+        } else if (previous[old] == from) {
+            previous[old] = -1;
+        }
+        next[from] = to;
+        previous[to] = from;
+    }
+
+    /**
+     * Add every connection of another tour, replacing the connections leaving the same cities.
+     * @param other Connections to add
+     */
+    public void putAll(Tour other) {
+        for (int city = 0; city < other.next.length; city++) {
+            if (other.next[city] != -1)
+                connect(city, other.next[city]);
+        }
+    }
+
+    /**
+     * Remove every connection.
+     */
+    public void clear() {
+        Arrays.fill(next, -1);
+        Arrays.fill(previous, -1);
+        edgeCount = 0;
+    }
+
+    /**
+     * @param city Index of a city
+     * @return Index of the city it connects to, or -1 if none
+     */
+    public int next(int city) {
+        return city < next.length ? next[city] : -1;
+    }
+
+    /**
+     * @param city Index of a city
+     * @return Index of the city most recently connected to it, or -1 if none
+     */
+    public int previous(int city) {
+        return city < previous.length ? previous[city] : -1;
+    }
+
+    /**
+     * @return Number of cities that can be referred to without growing
+     */
+    public int capacity() {
+        return next.length;
+    }
+
+    /**
+     * @return Number of connections
+     */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /**
+     * @return true if there are no connections
+     */
+    public boolean isEmpty() {
+        return edgeCount == 0;
+    }
+
+
+    /**
+     * Follow connections from a city until they run out or come back to it.
+     * @param start Index of the first city
+     * @return Cities in the order visited, starting with start
+     */
+    public int[] order(int start) {
+        int[] order = new int[Math.max(edgeCount, 1)];
+        int count = 0;
+        int city = start;
+        while (city != -1 && count < order.length) {
+            order[count++] = city;
+            city = next(city);
+            if (city == start)
+                break;
+        }
+        return count == order.length ? order : Arrays.copyOf(order, count);
+    }
+
+
+    /**
+     * Total length of every connection.
+     * @param table Distances between the cities
+     * @return Sum of connection lengths
+     */
+    public double length(DistanceTable table) {
+        double total = 0;
+        for (int city = 0; city < next.length; city++) {
+            if (next[city] != -1)
+                total += table.distance(city, next[city]);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Adds newly created or loaded cities to an existing tour instead of solving again from scratch.
+ * Every new city goes into the cheapest edge next to one of its nearest cities already on the tour,
+ * and the tour is then re-optimised around the new cities only. Each insertion makes the tour drift a
+ * little further from what a full solve would give, so once the inserted cities make up more than a
+ * set share of the map, insert() declines and a full solve is expected instead. insert() runs on the
+ * solver thread and reset() on the event dispatch thread; a reset that lands while an insertion runs
+ * may be lost, which only brings the next full solve forward.
+ */
+public class TourInsertion {
+
+    /**
+     * Share of the cities that may have been inserted since the last full solve.
+     */
+    public static final double DEFAULT_MAX_DRIFT = 0.2;
+
+    private static final int CANDIDATES = 8;
+
+    private final double maxDrift;
+    private volatile int drift = 0;
+
+
+    /**
+     * Instantiates the insertion with the default drift limit.
+     */
+    public TourInsertion() {
+        this(DEFAULT_MAX_DRIFT);
+    }
+
+    /**
+     * Instantiates the insertion.
+     * @param maxDrift Share of the cities, from 0 to 1, that may have been inserted since the last full
+     *                 solve before a full solve is needed again
+     */
+    public TourInsertion(double maxDrift) {
+        this.maxDrift = maxDrift;
+    }
+
+
+    /**
+     * Record that a full solve has been started, so the drift starts again from zero.
+     */
+    public void reset() {
+        drift = 0;
+    }
+
+    /**
+     * @return Number of cities inserted since the last full solve
+     */
+    public int getDrift() {
+        return drift;
+    }
+
+
+    /**
+     * Insert the cities from index first onwards into the tour over the cities before it.
+     * @param snapshot Cities to connect
+     * @param tour Closed tour over the cities before first, which is extended in place
+     * @param first Index of the first new city
+     * @return Paths between every city as a tour, or null if a full solve is needed instead
+     */
+    public Tour insert(CitySnapshot snapshot, Tour tour, int first) throws InterruptedException {
+        DistanceTable table = snapshot.table;
+        int n = table.size();
+        int added = n - first;
+        if (added <= 0 || first < 3 || drift + added > maxDrift * n)
+            return null;
+        int[] existing = tour.order(0);
+        if (existing.length != first || tour.edgeCount() != first
+                || tour.next(existing[first - 1]) != existing[0])
+            return null;
+
+        boolean[] onTour = new boolean[n];
+        for (int i = 0; i < first; i++)
+            onTour[i] = true;
+        SpatialGrid grid = new SpatialGrid(table.xs, table.ys, n);
+        int[] inserted = new int[added];
+        for (int city = first; city < n; city++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int bestT1 = -1;
+            double bestCost = Double.MAX_VALUE;
+
+            //   Look at more neighbours until one of them is on the tour. New cities are few compared
+            // with the tour, so the first search nearly always succeeds.
+
+            for (int k = CANDIDATES; bestT1 == -1; k *= 2) {
+                for (int c : grid.nearest(city, k)) {
+                    if (!onTour[c])
+                        continue;
+                    for (int side = 0; side < 2; side++) {
+                        int t1 = side == 0 ? c : tour.previous(c);
+                        int t2 = tour.next(t1);
+                        double cost = table.distance(t1, city) + table.distance(city, t2)
+                                - table.distance(t1, t2);
+                        if (cost < bestCost) {
+                            bestCost = cost;
+                            bestT1 = t1;
+                        }
+                    }
+                }
+                if (k >= n)
+                    break;
+            }
+            int bestT2 = tour.next(bestT1);
+            tour.connect(bestT1, city);
+            tour.connect(city, bestT2);
+            onTour[city] = true;
+            inserted[city - first] = city;
+        }
+        int[] order = new LocalSearch(table.xs, table.ys, LocalSearch.DEFAULT_NEIGHBOURS)
+                .repair(tour.order(0), inserted);
+        drift += added;
+        return Tour.fromOrder(order);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Keeps a tour up to date while a single city is dragged around. Instead of solving again from
+ * scratch on every mouse event, the dragged city is taken out of the tour, put back at the cheapest
+ * place next to its new nearest neighbours, and the tour is re-optimised only around the cities that
+ * changed. The neighbour index and tour arrays are built once when the drag starts and reused for
+ * every later move, and only the connections that changed are written back, so a move costs as much
+ * as the repair it needed rather than the length of the tour.
+ */
+public class TourRepair {
+
+    final Tour paths;
+    private final int size;
+    private final LocalSearch search;
+
+
+    private TourRepair(Tour paths, int[] xs, int[] ys, int[] order) {
+        this.paths = paths;
+        this.size = xs.length;
+        this.search = new LocalSearch(xs, ys, LocalSearch.DEFAULT_NEIGHBOURS);
+        search.load(order);
+    }
+
+
+    /**
+     * Starts a repair session over the current paths of the database. Must be called while holding the
+     * database lock.
+     * @param cityDB The CityDatabase singleton object
+     * @return The session, or null if the paths are not a single closed tour over every city
+     */
+    static TourRepair begin(CityDatabase cityDB) {
+        int n = cityDB.coordinates.size();
+        Tour paths = cityDB.paths;
+        if (n < 5 || paths.edgeCount() != n)
+            return null;
+        int[] order = paths.order(0);
+        if (order.length != n || paths.next(order[n - 1]) != order[0])
+            return null;
+        return new TourRepair(paths, cityDB.coordinates.copyXs(), cityDB.coordinates.copyYs(), order);
+    }
+
+
+    /**
+     * @return Number of cities the session was started with
+     */
+    int size() {
+        return size;
+    }
+
+
+    /**
+     * Repair the tour after a city moved, and write the connections that changed into the paths the
+     * session was started on.
+     * @param city Index of the city that moved
+     * @param x The new X location of the city
+     * @param y The new Y location of the city
+     */
+    void move(int city, int x, int y) throws InterruptedException {
+        if (city < 0 || city >= size)
+            return;
+        search.relocate(city, x, y);
+        search.beginJournal();
+        try {
+            search.reinsert(city);
+        } finally {
+            search.applyJournal(paths);
+            search.commitJournal();
+        }
+    }
+}
@@ -1,23 +1,18 @@
 import java.awt.BorderLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
-import java.awt.Color;
+import javax.swing.SwingUtilities;
 
 /**
  * Encapsulating view class that runs the program and handles menu interaction,
@@ -26,11 +21,28 @@ import java.awt.Color;
  */
 public class View extends JFrame {
 
+    /**
+     * Files of at least this many bytes are memory mapped and parsed in parallel when loaded.
+     */
+    static final long MAPPED_LOAD_SIZE = 1 << 24;
+
+    // saves and exports run here one after another, off the event dispatch thread
+    private final ExecutorService fileWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "File Writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Workspace panel;
+
     /**
      * Initialize the view with menu and content.
      */
     public View() {
-        Workspace panel = new Workspace();
+        panel = new Workspace();
         add(panel, BorderLayout.CENTER);
         add(StatusBar.getInstance(), BorderLayout.SOUTH);
         setTitle("City Map");
@@ -63,11 +75,35 @@ public class View extends JFrame {
         saveItem.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                save(CityDatabase.getInstance().cities, CityDatabase.getInstance().paths);
+                save();
+            }
+        });
+        JMenuItem exportItem = new JMenuItem("Export TSPLIB");
+        exportItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                export();
+            }
+        });
+        JMenuItem saveBinaryItem = new JMenuItem("Save Binary");
+        saveBinaryItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveBinary(false);
+            }
+        });
+        JMenuItem saveCompressedItem = new JMenuItem("Save Binary (compressed)");
+        saveCompressedItem.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveBinary(true);
             }
         });
         fileMenu.add(newItem);
         fileMenu.add(saveItem);
+        fileMenu.add(saveBinaryItem);
+        fileMenu.add(saveCompressedItem);
+        fileMenu.add(exportItem);
         fileMenu.add(loadItem);
         return fileMenu;
     }
@@ -78,49 +114,73 @@ public class View extends JFrame {
         optTSPGreedy.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    panel.setConnectionState(Workspace.ConnectionMode.TSP_GREEDY);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_GREEDY);
+            }
+        });
+        JMenuItem optTSPTwoOpt = new JMenuItem("TSP Nearest Neighbor + 2-opt");
+        optTSPTwoOpt.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_GREEDY_2OPT);
+            }
+        });
+        JMenuItem optTSPIterated = new JMenuItem("TSP Iterated Local Search");
+        optTSPIterated.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_ITERATED);
+            }
+        });
+        JMenuItem optTSPPartitioned = new JMenuItem("TSP Partitioned (large maps)");
+        optTSPPartitioned.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_PARTITIONED);
             }
         });
         JMenuItem optTSPBrute = new JMenuItem("TSP Pro");
         optTSPBrute.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    panel.setConnectionState(Workspace.ConnectionMode.TSP_PRO);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_PRO);
+            }
+        });
+        JMenuItem optTSPBranch = new JMenuItem("TSP Branch and Bound");
+        optTSPBranch.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setConnectionState(Workspace.ConnectionMode.TSP_BRANCH_BOUND);
             }
         });
         JMenuItem optCluster = new JMenuItem("Clusters");
         optCluster.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    panel.setConnectionState(Workspace.ConnectionMode.CLUSTERS);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                panel.setConnectionState(Workspace.ConnectionMode.CLUSTERS);
+            }
+        });
+        JMenuItem optDensity = new JMenuItem("Density Clusters");
+        optDensity.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                panel.setConnectionState(Workspace.ConnectionMode.DENSITY_CLUSTERS);
             }
         });
         JMenuItem optUserConn = new JMenuItem("User Connect");
         optUserConn.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    panel.setConnectionState(Workspace.ConnectionMode.USER_CONNECT);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                panel.setConnectionState(Workspace.ConnectionMode.USER_CONNECT);
             }
         });
         connMenu.add(optTSPGreedy);
+        connMenu.add(optTSPTwoOpt);
+        connMenu.add(optTSPIterated);
+        connMenu.add(optTSPPartitioned);
         connMenu.add(optTSPBrute);
+        connMenu.add(optTSPBranch);
         connMenu.add(optCluster);
+        connMenu.add(optDensity);
         connMenu.add(optUserConn);
         return connMenu;
     }
@@ -138,11 +198,7 @@ public class View extends JFrame {
         optConnect.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                try {
-                    panel.setConnectionState(Workspace.ConnectionMode.USER_CONNECT);
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
+                panel.setConnectionState(Workspace.ConnectionMode.USER_CONNECT);
                 panel.setActionState(Workspace.ActionMode.CONNECT);
             }
         });
@@ -169,149 +225,155 @@ public class View extends JFrame {
         File selected = browseFile.getSelectedFile();
         if (value != JFileChooser.APPROVE_OPTION || selected == null) return;
         
-        String text = "";
         try {
-            text = readTextFile(selected);
-        } catch (Exception ex) {
-            System.out.println("Failed to load from file.");
+            if (BinaryMapFormat.isBinary(selected)) {
+                loadBinary(selected);
+                return;
+            }
+        } catch (IOException ex) {
+            System.out.println("Failed to load from file: " + ex.getMessage());
             return;
         }
-        
-        String typeValue = seekHeaderValue(text, "TYPE");
-        String dimensionValue = seekHeaderValue(text, "DIMENSION");
-        
-        if (typeValue.equalsIgnoreCase("TSP")) {
-            parseNodes(text);
-        } else {
-            throw new NullPointerException();
+        TSPLoader loader = selected.length() >= MAPPED_LOAD_SIZE
+                ? new MappedTSPLoader(CityDatabase.getInstance())
+                : new TSPLoader(CityDatabase.getInstance());
+        int first = CityDatabase.getInstance().cities.size();
+        // one notification for the whole file instead of one per city
+        CityDatabase.getInstance().beginBatch();
+        try {
+            loader.load(selected);
+        } catch (IOException ex) {
+            System.out.println("Failed to load from file: " + ex.getMessage());
+            return;
+        } finally {
+            CityDatabase.getInstance().commitBatch();
         }
+        StatusBar.getInstance().setStatus(loader.getCityCount() + " cities loaded.");
+        panel.citiesLoaded(first);
     }
     
-    private String readTextFile(File file) {
-        String text = "";
+    private void loadBinary(File selected) {
+        int first = CityDatabase.getInstance().cities.size();
+        int count;
+        CityDatabase.getInstance().beginBatch();
         try {
-            BufferedReader br = new BufferedReader(new FileReader(file));
-            String str = br.readLine();
-            while (str != null) {
-                text += str + "\n"; // adding a space serves to delimit new-lines
-                str = br.readLine();
-            }
-            br.close();
-            return text;
-        } catch(IOException ex) {
-            System.out.println("Reader failed to parse file.");
+            count = BinaryMapFormat.load(selected, CityDatabase.getInstance());
+        } catch (IOException ex) {
+            System.out.println("Failed to load from file: " + ex.getMessage());
+            return;
+        } finally {
+            CityDatabase.getInstance().commitBatch();
         }
-        return text;
+        StatusBar.getInstance().setStatus(count + " cities loaded.");
+        panel.citiesLoaded(first);
     }
-
-    private String seekHeaderValue(String text, String key) {
-        String line = "";
-        int lineDelimiter = 0;
-        do {
-            lineDelimiter = text.indexOf("\n");
-            if (lineDelimiter == -1) {
-                throw new RuntimeException();
-            }
-            line = text.substring(0, lineDelimiter + 1);
-            text = text.substring(lineDelimiter + 1);
-        } while(!line.startsWith(key));
-
-        int valueDelimiter = line.indexOf(":");
-        if (valueDelimiter == -1) {
-            return text;
+    
+    /**
+     * Saves the current model in the binary map format. The file is written on a background thread
+     * from a snapshot, so the map can be edited meanwhile.
+     * @param compress true to compress the file
+     */
+    public void saveBinary(final boolean compress) {
+        JFileChooser createFile = new JFileChooser(".");
+        int value = createFile.showSaveDialog(View.this);
+        final File saveFile = createFile.getSelectedFile();
+        if (value != JFileChooser.APPROVE_OPTION || saveFile == null) return;
+        CityDatabase cityDB = CityDatabase.getInstance();
+        if (cityDB.cities.isEmpty()) {
+            System.out.println("Could not save cities. Try adding one");
+            return;
         }
-        return line.substring(valueDelimiter + 1, lineDelimiter).trim();
-    }
-
-    private void parseNodes(String text) {
-        text = seekHeaderValue(text, "NODE_COORD_SECTION");
-        String[] coords;
-        String line = "";
-        int lineDelimiter;
-        do {
-            lineDelimiter = text.indexOf("\n");
-            if (lineDelimiter == -1) break;
-            line = text.substring(0, lineDelimiter + 1);
-            text = text.substring(lineDelimiter + 1);
-            if(line.contains("EOFCoordinates")) {
-                break;
+        final CitySnapshot snapshot;
+        final Tour paths;
+        synchronized (cityDB) {
+            snapshot = cityDB.getSnapshot();
+            paths = cityDB.copyPaths();
+        }
+        StatusBar.getInstance().setStatus("Writing " + saveFile.getName() + "...");
+        fileWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try {
+                    BinaryMapFormat.save(saveFile, snapshot, paths, compress);
+                    message = snapshot.cities.size() + " cities written to " + saveFile.getName() + ".";
+                } catch (IOException ex) {
+                    message = "Failed to save: " + ex.getMessage();
+                }
+                final String status = message;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        StatusBar.getInstance().setStatus(status);
+                    }
+                });
             }
-            coords = line.split(" ");
-            int y = (int)Double.parseDouble(coords[2]);
-            int x = (int)Double.parseDouble(coords[1]);
-            String name = coords.length > 3 ? coords[3] : "";
-            CityDatabase.getInstance().createCity(x, y, name, new Color(1), "");
-        } while (text.contains("EOFCoordinates"));
-        parseConnections(text);
+        });
     }
     
     /**
-     * this creates the connections from a file.
-     * @param text
+     * Saves the current model in the format Load reads back. The file is written on a background
+     * thread from a snapshot, so the map can be edited meanwhile.
      */
-    private void parseConnections(String text){
-        CityDatabase find = CityDatabase.getInstance();
-        String[] coords;
-        String line = "";
-        int lineDelimiter;
-        Map<City, City> connections = new HashMap<>();
-        while(text.contains("EOFLines")) {
-            lineDelimiter = text.indexOf("\n");
-            if (lineDelimiter == -1) break;
-            line = text.substring(0, lineDelimiter + 1);
-            if(line.contains("EOFLines")) {
-                break;
-            }
-            text = text.substring(lineDelimiter + 1);
-            coords = line.split(" ");
-            City one = find.findCityAt(Integer.parseInt(coords[0]), Integer.parseInt(coords[1]));
-            City two = find.findCityAt(Integer.parseInt(coords[2]), Integer.parseInt(coords[3]));
-            if(one!=null&&two!=null) {
-                connections.put(one, two);
-            }
-        }
-        find.addConnections(connections);
+    public void save() {
+        File saveFile = chooseTextFile();
+        if (saveFile != null) writeInBackground(saveFile, false);
     }
     
     /**
-     * Saves the current model.
-     * @param cities List of cities to save.
+     * Exports the current model as a standard TSPLIB file with a TOUR_SECTION, on a background thread.
      */
-    public void save(List<City> cities, Map<City, City> connects) {
+    public void export() {
+        File saveFile = chooseTextFile();
+        if (saveFile != null) writeInBackground(saveFile, true);
+    }
+    
+    private File chooseTextFile() {
         JFileChooser createFile = new JFileChooser(".");
-        createFile.showSaveDialog(View.this);
+        int value = createFile.showSaveDialog(View.this);
         File saveFile = createFile.getSelectedFile();
-
-        int size = cities.size();
-        if (size == 0 || saveFile == null) {
+        if (value != JFileChooser.APPROVE_OPTION || saveFile == null
+                || CityDatabase.getInstance().cities.isEmpty()) {
             System.out.println("Could not save cities. Try adding one");
-            return;
+            return null;
         }
-        try {
-            saveFile.createNewFile();
-            BufferedWriter writer = new BufferedWriter(new FileWriter(saveFile));
-            // write header
-            writer.write("TYPE : TSP\n");
-            writer.write("DIMENSION : " + cities.size() + "\n");
-            writer.write("NODE_COORD_SECTION\n");
-            for(int i = 0; i < cities.size(); i++) {
-                City city = cities.get(i);
-                double x = (double) city.getX();
-                double y = (double) city.getY();
-                String out = String.format("%d %.4f %.4f %s\n", 
-                        i + 1, x, y, city.name);
-                writer.write(out);
-            }
-            writer.write("EOFCoordinates\n");
-            for(Map.Entry<City, City> map: connects.entrySet()) {
-                writer.write(map.getKey().getX() + " " + map.getKey().getY() + " " + map.getValue().getX() + " " + map.getValue().getY()+" \n");
-            }
-            writer.write("EOFLines\n");
-            writer.flush();
-            writer.close();
-        } catch (IOException ex) {
-            System.out.println("Failed to save; could not load writer.");
+        return saveFile;
+    }
+    
+    private void writeInBackground(final File file, final boolean tsplib) {
+        CityDatabase cityDB = CityDatabase.getInstance();
+        final CitySnapshot snapshot;
+        final Tour paths;
+        synchronized (cityDB) {
+            snapshot = cityDB.getSnapshot();
+            paths = cityDB.copyPaths();
         }
+        StatusBar.getInstance().setStatus("Writing " + file.getName() + "...");
+        fileWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                String message;
+                try (TSPWriter writer = TSPWriter.open(file)) {
+                    if (tsplib) {
+                        String name = file.getName();
+                        int dot = name.lastIndexOf('.');
+                        writer.writeTSPLIB(dot > 0 ? name.substring(0, dot) : name, snapshot, paths);
+                    } else {
+                        writer.writeMap(snapshot, paths);
+                    }
+                    message = snapshot.cities.size() + " cities written to " + file.getName() + ".";
+                } catch (IOException ex) {
+                    message = "Failed to save: " + ex.getMessage();
+                }
+                final String status = message;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        StatusBar.getInstance().setStatus(status);
+                    }
+                });
+            }
+        });
     }
     
     /**
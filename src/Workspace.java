@@ -9,7 +9,6 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import javax.swing.JPanel;
 import javax.swing.JTextField;
 
@@ -24,15 +23,15 @@ public class Workspace extends JPanel implements MouseListener,
     boolean isAddingCity = false;
     private City selected = null;
     final NewCityHandler newCityHandler;
-    private Strategy strategy = new GreedyTSP();
-    private Thread thread = new Thread(strategy);
+    private final SolverScheduler scheduler = new SolverScheduler();
+    private final TourInsertion insertion = new TourInsertion();
     
     public enum ActionMode {
         CREATE, MOVE, CONNECT
     }
     
     public enum ConnectionMode {
-        TSP_GREEDY, TSP_PRO, CLUSTERS, USER_CONNECT
+        TSP_GREEDY, TSP_GREEDY_2OPT, TSP_ITERATED, TSP_PARTITIONED, TSP_PRO, TSP_BRANCH_BOUND, CLUSTERS, DENSITY_CLUSTERS, USER_CONNECT
     }
     
     ActionMode actionModeState = ActionMode.CREATE;
@@ -63,7 +62,7 @@ public class Workspace extends JPanel implements MouseListener,
      * Set the connection mode state that decides how to connect cities.
      * @param mode ConnectionMode to set state to.
      */
-    public void setConnectionState(ConnectionMode mode) throws InterruptedException {
+    public void setConnectionState(ConnectionMode mode) {
         selected = null;
         connectionModeState = mode;
         StatusBar.getInstance().setStatus("Connection Mode changed to: " + mode.name());
@@ -71,29 +70,95 @@ public class Workspace extends JPanel implements MouseListener,
         repaint();
     }
 
-    private void checkForPath() throws InterruptedException {
-        thread.interrupt();
+    //   Hands the strategy for the current mode to the scheduler, which coalesces bursts of calls
+    // (one per drag event) into a single run of the latest one.
+
+    private void checkForPath() {
+        insertion.reset();
+        submit(createStrategy());
+    }
+
+    private Strategy createStrategy() {
+        Strategy strategy = null;
         if(connectionModeState == ConnectionMode.TSP_GREEDY) {
             strategy = new GreedyTSP();
-            thread = new Thread(strategy);
-            thread.start();
+        } else if(connectionModeState == ConnectionMode.TSP_GREEDY_2OPT) {
+            strategy = new GreedyTwoOptTSP();
+        } else if(connectionModeState == ConnectionMode.TSP_ITERATED) {
+            strategy = new IteratedLocalSearchTSP();
+        } else if(connectionModeState == ConnectionMode.TSP_PARTITIONED) {
+            strategy = new PartitionedTSP();
         } else if(connectionModeState == ConnectionMode.TSP_PRO) {
-            strategy = new BruteForcePath();
-            thread = new Thread(strategy);
-            thread.start();
+            strategy = new HeldKarpPath();
+        } else if(connectionModeState == ConnectionMode.TSP_BRANCH_BOUND) {
+            strategy = new ParallelBranchAndBoundPath();
         } else if(connectionModeState == ConnectionMode.CLUSTERS) {
             strategy = new Cluster();
-            thread = new Thread(strategy);
-            thread.start();
+        } else if(connectionModeState == ConnectionMode.DENSITY_CLUSTERS) {
+            strategy = new DensityCluster();
+        }
+        if (strategy != null) {
+            strategy.addObserver(StatusBar.getInstance());
+        }
+        return strategy;
+    }
+
+    private void submit(Strategy strategy) {
+        if (strategy != null) {
+            scheduler.submit(strategy);
+        } else {
+            scheduler.cancel();
         }
     }
     
+    //   Adds the cities from index first onwards to the current tour in the heuristic tour modes,
+    // which would not give an exact answer anyway. Exact modes, other modes and tours that drifted
+    // too far get a full solve instead.
+
+    private void checkForPath(int first) {
+        switch (connectionModeState) {
+            case TSP_GREEDY:
+            case TSP_GREEDY_2OPT:
+            case TSP_ITERATED:
+            case TSP_PARTITIONED:
+                Strategy strategy = new InsertionStrategy(first, createStrategy());
+                strategy.addObserver(StatusBar.getInstance());
+                submit(strategy);
+                break;
+            default:
+                checkForPath();
+                break;
+        }
+    }
+    
+    private boolean isTourMode() {
+        switch (connectionModeState) {
+            case TSP_GREEDY:
+            case TSP_GREEDY_2OPT:
+            case TSP_ITERATED:
+            case TSP_PARTITIONED:
+            case TSP_PRO:
+            case TSP_BRANCH_BOUND:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    //   The exact modes only promise an optimal tour if they are solved again once a drag ends, so
+    // for them the repair is just a preview.
+
+    private boolean isExactMode() {
+        return connectionModeState == ConnectionMode.TSP_PRO
+                || connectionModeState == ConnectionMode.TSP_BRANCH_BOUND;
+    }
+    
     /**
      * Clear collection of cities and repaint.
      */
     public void reset() {
         selected = null;
-        thread.interrupt();
+        scheduler.cancel();
         CityDatabase.getInstance().clear();
         StatusBar.getInstance().setStatus("Cities cleared.");
         repaint();
@@ -103,11 +168,19 @@ public class Workspace extends JPanel implements MouseListener,
      * Clear collection of cities and load new cities.
      * @param newCities Cities to load.
      */
-    public void loadCities(City[] newCities) throws InterruptedException {
-        thread.interrupt();
+    public void loadCities(City[] newCities) {
+        int first = CityDatabase.getInstance().cities.size();
         CityDatabase.getInstance().addCities(newCities);
         StatusBar.getInstance().setStatus("New cities loaded.");
-        checkForPath();
+        citiesLoaded(first);
+    }
+    
+    /**
+     * Connect cities that were added to the database by a loader, like newly created ones.
+     * @param first Index of the first loaded city
+     */
+    public void citiesLoaded(int first) {
+        checkForPath(first);
         repaint();
     }
     
@@ -120,11 +193,11 @@ public class Workspace extends JPanel implements MouseListener,
         super.paintComponent(g);
         Graphics2D g2 = (Graphics2D)g;
         List<City> cities = CityDatabase.getInstance().cities;
-        Map<City,City> paths = CityDatabase.getInstance().paths;
+        Tour paths = CityDatabase.getInstance().paths;
         
         Color prevColor = g.getColor();
         paintCities(g, cities);
-        paintPaths(g2, paths);
+        paintPaths(g2, cities, paths);
         g.setColor(prevColor);
     }
     
@@ -134,11 +207,14 @@ public class Workspace extends JPanel implements MouseListener,
         }
     }
     
-    private void paintPaths(Graphics2D g, Map<City, City> paths) {
+    private void paintPaths(Graphics2D g, List<City> cities, Tour paths) {
         if (paths != null) {
             g.setColor(Color.RED);
-            for (City thisCity : paths.keySet()) {
-                City otherCity = paths.get(thisCity);
+            for (int i = 0; i < cities.size(); i++) {
+                int other = paths.next(i);
+                if (other < 0 || other >= cities.size()) continue;
+                City thisCity = cities.get(i);
+                City otherCity = cities.get(other);
                 g.drawLine(thisCity.center().x, thisCity.center().y, 
                         otherCity.center().x, otherCity.center().y);
             }
@@ -216,6 +292,11 @@ public class Workspace extends JPanel implements MouseListener,
                     preY = (int)(selected.getY() - e.getY());
                     CityDatabase.getInstance().moveCity(selected, 
                             preX + e.getX(), preY + e.getY());
+                    // while dragging, tours are repaired locally instead of solved again
+                    if (isTourMode()) {
+                        scheduler.cancel();
+                        CityDatabase.getInstance().beginRepair();
+                    }
                 }
                 break;
         }
@@ -234,13 +315,13 @@ public class Workspace extends JPanel implements MouseListener,
                 CityDatabase.getInstance().moveCity(selected, preX + e.getX(), preY + e.getY());
                 StatusBar.getInstance().setStatus("Placed city at new location: " 
                         + (preX + e.getX()) + ", " + (preY + e.getY()));
-                try {
-                    checkForPath();
-                } catch (InterruptedException ex) {
-                    ex.printStackTrace();
-                }
-                repaint();
             }
+            // a tour that was repaired all through the drag is kept as it is, unless it must be optimal
+            boolean repaired = CityDatabase.getInstance().endRepair();
+            if ((!repaired || isExactMode()) && selected != null) {
+                checkForPath();
+            }
+            repaint();
         }
     }
 
@@ -267,10 +348,8 @@ public class Workspace extends JPanel implements MouseListener,
     public void mouseDragged(MouseEvent e) {
         if(actionModeState == ActionMode.MOVE && selected != null) {
             CityDatabase.getInstance().moveCity(selected, preX + e.getX(), preY + e.getY());
-            try {
+            if (!CityDatabase.getInstance().isRepairing()) {
                 checkForPath();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
             }
             repaint();
         }
@@ -284,14 +363,40 @@ public class Workspace extends JPanel implements MouseListener,
     public void mouseMoved(MouseEvent e) {}
     
     /**
-     * Sets the city paths and redraw the map.
-     * @param ob Paths as a map with key and value as cities
+     * Redraw the map after the cities or paths changed. Changes arrive merged, at most once per frame.
+     * @param ob CityChange describing what changed since the last update
      */
     @Override
     public void update(Object ob) {
         repaint();
     }
     
+    //   Runs the insertion on the solver thread, against the snapshot of the run. When the tour
+    // cannot take the new cities, it hands the scheduler the full strategy for the mode, which then
+    // runs and is cancelled like any other request.
+
+    private class InsertionStrategy extends Strategy {
+        private final int first;
+        private final Strategy fallback;
+
+        private InsertionStrategy(int first, Strategy fallback) {
+            this.first = first;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public void createPath(CityDatabase cityDB) throws InterruptedException {
+            CitySnapshot snapshot = getSnapshot(cityDB);
+            Tour path = insertion.insert(snapshot, cityDB.copyPaths(), first);
+            if (path != null) {
+                applyResult(cityDB, snapshot, path);
+                return;
+            }
+            insertion.reset();
+            scheduler.handOver(this, fallback);
+        }
+    }
+    
     private class NewCityHandler implements ActionListener {
         int x, y;
         final JTextField pendingNameField;
@@ -323,14 +428,11 @@ public class Workspace extends JPanel implements MouseListener,
         public void actionPerformed(ActionEvent e) {
             pendingNameField.setVisible(false);
             String name = e.getActionCommand();
+            int first = CityDatabase.getInstance().cities.size();
             CityDatabase.getInstance().createCity(x, y, name, Color.BLACK, "");
             StatusBar.getInstance().setStatus("New city " + name + " created.");
             isAddingCity = false;
-            try {
-                checkForPath();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
-            }
+            checkForPath(first);
             repaint();
         }
     }